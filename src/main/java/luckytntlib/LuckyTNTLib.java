@@ -11,6 +11,10 @@ import luckytntlib.entity.LTNTMinecart;
 import luckytntlib.item.LDynamiteItem;
 import luckytntlib.item.LTNTMinecartItem;
 import luckytntlib.registry.RegistryHelper;
+import luckytntlib.util.explosions.ExplosionCraterCache;
+import luckytntlib.util.explosions.ExplosionPlan;
+import luckytntlib.util.explosions.ExplosionResistanceTable;
+import luckytntlib.util.explosions.ExplosionScheduler;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.screens.Screen;
 import net.minecraft.core.BlockPos;
@@ -20,6 +24,7 @@ import net.minecraft.core.component.DataComponents;
 import net.minecraft.core.dispenser.BlockSource;
 import net.minecraft.core.dispenser.DefaultDispenseItemBehavior;
 import net.minecraft.core.dispenser.DispenseItemBehavior;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.tags.BlockTags;
 import net.minecraft.util.Mth;
 import net.minecraft.world.item.Item;
@@ -32,11 +37,18 @@ import net.minecraft.world.level.block.state.properties.RailShape;
 import net.minecraft.world.phys.Vec3;
 import net.minecraftforge.client.ConfigScreenHandler;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.level.BlockEvent;
+import net.minecraftforge.event.level.ChunkEvent;
+import net.minecraftforge.event.level.LevelEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.config.ModConfigEvent;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
+import net.minecraftforge.registries.IdMappingEvent;
 import net.minecraftforge.registries.RegistryObject;
 
 @Mod(LuckyTNTLib.MODID)
@@ -46,7 +58,14 @@ public class LuckyTNTLib
     public LuckyTNTLib() {
         IEventBus bus = FMLJavaModLoadingContext.get().getModEventBus();
         bus.addListener(this::commonSetup);
+        bus.addListener(this::configChanged);
         MinecraftForge.EVENT_BUS.register(this);
+        MinecraftForge.EVENT_BUS.addListener(this::tagsUpdated);
+        MinecraftForge.EVENT_BUS.addListener(this::idsRemapped);
+        MinecraftForge.EVENT_BUS.addListener(this::levelTick);
+        MinecraftForge.EVENT_BUS.addListener(this::levelUnload);
+        MinecraftForge.EVENT_BUS.addListener(this::chunkUnload);
+        MinecraftForge.EVENT_BUS.addListener(this::neighborNotify);
         LuckyTNTLibConfigs.register();
         ModLoadingContext.get().registerExtensionPoint(ConfigScreenHandler.ConfigScreenFactory.class, () -> new ConfigScreenHandler.ConfigScreenFactory(new BiFunction<Minecraft, Screen, Screen>() {		
 			@Override
@@ -56,6 +75,48 @@ public class LuckyTNTLib
 		}));
     }
     
+    private void configChanged(final ModConfigEvent event) {
+    	if(event.getConfig().getModId().equals(MODID)) {
+    		ExplosionPlan.clearCache();
+    		ExplosionCraterCache.clearCache();
+    	}
+    }
+    
+    private void tagsUpdated(final TagsUpdatedEvent event) {
+    	ExplosionResistanceTable.invalidate();
+    	ExplosionCraterCache.clearCache();
+    }
+    
+    private void idsRemapped(final IdMappingEvent event) {
+    	ExplosionResistanceTable.invalidate();
+    	ExplosionCraterCache.clearCache();
+    }
+    
+    private void levelTick(final TickEvent.LevelTickEvent event) {
+    	if(event.phase == TickEvent.Phase.END && event.level instanceof ServerLevel level) {
+    		ExplosionScheduler.tickLevel(level);
+    	}
+    }
+    
+    private void levelUnload(final LevelEvent.Unload event) {
+    	if(event.getLevel() instanceof Level level) {
+    		ExplosionScheduler.clearLevel(level);
+    		ExplosionCraterCache.clearLevel(level);
+    	}
+    }
+    
+    private void chunkUnload(final ChunkEvent.Unload event) {
+    	if(event.getLevel() instanceof Level level) {
+    		ExplosionCraterCache.invalidateChunk(level, event.getChunk().getPos(), event.getChunk().getMinSection(), event.getChunk().getMaxSection());
+    	}
+    }
+    
+    private void neighborNotify(final BlockEvent.NeighborNotifyEvent event) {
+    	if(event.getLevel() instanceof Level level) {
+    		ExplosionCraterCache.invalidate(level, event.getPos());
+    	}
+    }
+    
     private void commonSetup(final FMLCommonSetupEvent event) {
     	for(Pair<RegistryObject<LTNTBlock>, RegistryObject<Item>> pair : RegistryHelper.TNT_DISPENSER_REGISTRY_LIST) {
     		LTNTBlock block = pair.getFirst().get();
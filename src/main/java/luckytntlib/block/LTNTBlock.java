@@ -37,6 +37,10 @@ public class LTNTBlock extends TntBlock{
 
 	@Nullable
 	protected RegistryObject<EntityType<PrimedLTNT>> TNT;
+	/**
+	 * @deprecated the random of the level is used instead
+	 */
+	@Deprecated
 	protected Random random = new Random();
 	protected boolean randomizedFuseUponExploded = true;
 	
@@ -99,7 +103,7 @@ public class LTNTBlock extends TntBlock{
 	public PrimedLTNT explode(Level level, boolean exploded, double x, double y, double z, @Nullable LivingEntity igniter) throws NullPointerException {
 		if(TNT != null) {
 			PrimedLTNT tnt = TNT.get().create(level);
-			tnt.setFuse(exploded && randomizedFuseUponExploded() ? tnt.getEffect().getDefaultFuse(tnt) / 8 + random.nextInt(Mth.clamp(tnt.getEffect().getDefaultFuse(tnt) / 4, 1, Integer.MAX_VALUE)) : tnt.getEffect().getDefaultFuse(tnt));
+			tnt.setFuse(exploded && randomizedFuseUponExploded() ? tnt.getEffect().getDefaultFuse(tnt) / 8 + level.random.nextInt(Mth.clamp(tnt.getEffect().getDefaultFuse(tnt) / 4, 1, Integer.MAX_VALUE)) : tnt.getEffect().getDefaultFuse(tnt));
 			tnt.setPos(x + 0.5f, y, z + 0.5f);
 			tnt.setOwner(igniter);
 			level.addFreshEntity(tnt);
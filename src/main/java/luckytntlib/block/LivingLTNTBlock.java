@@ -37,6 +37,10 @@ public class LivingLTNTBlock extends LTNTBlock{
 
 	@Nullable
 	protected RegistryObject<EntityType<LivingPrimedLTNT>> TNT;
+	/**
+	 * @deprecated the random of the level is used instead
+	 */
+	@Deprecated
 	protected Random random = new Random();
 	
 	public LivingLTNTBlock(BlockBehaviour.Properties properties, @Nullable RegistryObject<EntityType<LivingPrimedLTNT>> TNT, boolean randomizedFuseUponExploded) {
@@ -104,7 +108,7 @@ public class LivingLTNTBlock extends LTNTBlock{
 	public LivingPrimedLTNT explodus(Level level, boolean exploded, double x, double y, double z, @Nullable LivingEntity igniter) throws NullPointerException {
 		if(TNT != null) {
 			LivingPrimedLTNT tnt = TNT.get().create(level);
-			tnt.setTNTFuse(exploded && randomizedFuseUponExploded() ? tnt.getEffect().getDefaultFuse(tnt) / 8 + random.nextInt(Mth.clamp(tnt.getEffect().getDefaultFuse(tnt) / 4, 1, Integer.MAX_VALUE)) : tnt.getEffect().getDefaultFuse(tnt));
+			tnt.setTNTFuse(exploded && randomizedFuseUponExploded() ? tnt.getEffect().getDefaultFuse(tnt) / 8 + level.random.nextInt(Mth.clamp(tnt.getEffect().getDefaultFuse(tnt) / 4, 1, Integer.MAX_VALUE)) : tnt.getEffect().getDefaultFuse(tnt));
 			tnt.setPos(x + 0.5f, y, z + 0.5f);
 			tnt.setOwner(igniter);
 			level.addFreshEntity(tnt);
@@ -42,7 +42,7 @@ public class LuckyTNTBlock extends LTNTBlock{
 	 */
 	@Override
 	public PrimedLTNT explode(Level level, boolean exploded, double x, double y, double z, @Nullable LivingEntity igniter) {
-		int rand = random.nextInt(TNTs.size());
+		int rand = level.random.nextInt(TNTs.size());
 		if(level.getBlockState(new BlockPos((int)x, (int)y, (int)z)).getBlock() == this) {
 			level.setBlock(new BlockPos((int)x, (int)y, (int)z), Blocks.AIR.defaultBlockState(), 3);
 		}
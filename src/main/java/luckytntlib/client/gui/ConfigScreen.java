@@ -22,6 +22,8 @@ import net.minecraftforge.common.ForgeConfigSpec;
 public class ConfigScreen extends Screen{
 
 	Button performant_explosion = null;
+	Button voxel_explosion = null;
+	Button adaptive_explosion = null;
 	
 	ForgeSlider explosion_performance_factor_slider = null;
 	
@@ -47,6 +49,14 @@ public class ConfigScreen extends Screen{
 		explosion_performance_factor_slider.setTooltip(Tooltip.create(Component.translatable("config.explosion_performance_factor_tooltip")));
 		rows.addChild(new CenteredStringWidget(Component.translatable("config.explosion_performance_factor"), font));
 		rows.addChild(new Button.Builder(Component.translatable("config.reset"), button -> resetDoubleValue(LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR, explosion_performance_factor_slider)).width(100).build());
+		rows.addChild(voxel_explosion = new Button.Builder(LuckyTNTLibConfigValues.VOXEL_EXPLOSION.get().booleanValue() ? CommonComponents.OPTION_ON : CommonComponents.OPTION_OFF, button -> nextBooleanValue(LuckyTNTLibConfigValues.VOXEL_EXPLOSION, button)).width(100).build());
+		voxel_explosion.setTooltip(Tooltip.create(Component.translatable("config.voxel_explosion_tooltip")));
+		rows.addChild(new CenteredStringWidget(Component.translatable("config.voxel_explosion"), font));
+		rows.addChild(new Button.Builder(Component.translatable("config.reset"), button -> resetBooleanValue(LuckyTNTLibConfigValues.VOXEL_EXPLOSION, voxel_explosion)).width(100).build());
+		rows.addChild(adaptive_explosion = new Button.Builder(LuckyTNTLibConfigValues.ADAPTIVE_EXPLOSION.get().booleanValue() ? CommonComponents.OPTION_ON : CommonComponents.OPTION_OFF, button -> nextBooleanValue(LuckyTNTLibConfigValues.ADAPTIVE_EXPLOSION, button)).width(100).build());
+		adaptive_explosion.setTooltip(Tooltip.create(Component.translatable("config.adaptive_explosion_tooltip")));
+		rows.addChild(new CenteredStringWidget(Component.translatable("config.adaptive_explosion"), font));
+		rows.addChild(new Button.Builder(Component.translatable("config.reset"), button -> resetBooleanValue(LuckyTNTLibConfigValues.ADAPTIVE_EXPLOSION, adaptive_explosion)).width(100).build());
 		
 		layout.addToContents(grid);
 		layout.addToFooter(new Button.Builder(CommonComponents.GUI_DONE, button -> onClose()).width(100).build());
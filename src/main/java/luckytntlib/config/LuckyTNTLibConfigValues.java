@@ -6,10 +6,32 @@ public class LuckyTNTLibConfigValues {
 
 	public static ForgeConfigSpec.BooleanValue PERFORMANT_EXPLOSION;
 	public static ForgeConfigSpec.DoubleValue EXPLOSION_PERFORMANCE_FACTOR;
+	public static ForgeConfigSpec.BooleanValue VOXEL_EXPLOSION;
+	public static ForgeConfigSpec.BooleanValue ADAPTIVE_EXPLOSION;
+	public static ForgeConfigSpec.IntValue PARALLEL_EXPLOSION_THRESHOLD;
+	public static ForgeConfigSpec.IntValue INCREMENTAL_EXPLOSION_THRESHOLD;
+	public static ForgeConfigSpec.DoubleValue EXPLOSION_TICK_BUDGET;
+	public static ForgeConfigSpec.BooleanValue SCHEDULED_EXPLOSIONS;
+	public static ForgeConfigSpec.IntValue EXPLOSION_COALESCING_DISTANCE;
+	public static ForgeConfigSpec.IntValue CRATER_CACHE_CAPACITY;
+	public static ForgeConfigSpec.IntValue OFF_HEAP_EXPLOSION_THRESHOLD;
+	public static ForgeConfigSpec.BooleanValue DEFERRED_EXPLOSION_LIGHTING;
+	public static ForgeConfigSpec.BooleanValue EXPLOSION_BOUNDARY_UPDATES;
 	
 	public static void registerConfig(ForgeConfigSpec.Builder builder) {
 		builder.comment("General Explosions").push("Performance");
 		PERFORMANT_EXPLOSION = builder.comment("Whether or not an explosion should be used that has more performance at the cost of detail").define("performantExplosion", true);
 		EXPLOSION_PERFORMANCE_FACTOR = builder.comment("Higher values give more performance at the cost of details, lower values give more details at the cost of performance").defineInRange("explosionPerformanceFactor", 0.3d, 0.3d, 0.6d);
+		VOXEL_EXPLOSION = builder.comment("Whether or not explosion vectors should visit every block along their way exactly once instead of advancing in fixed steps. Needs far fewer block lookups, while the performance factor still scales how much strength a vector loses per block").define("voxelExplosion", false);
+		ADAPTIVE_EXPLOSION = builder.comment("Whether or not explosions should start with few explosion vectors that split up whenever neighbouring vectors drift more than a block apart. Needs far fewer block lookups for large explosions, as vectors only split where they are still strong enough to destroy blocks").define("adaptiveExplosion", false);
+		PARALLEL_EXPLOSION_THRESHOLD = builder.comment("The size from which on the explosion vectors of an explosion are shot by multiple threads at once. 0 disables this and keeps all explosions on the server thread").defineInRange("parallelExplosionThreshold", 50, 0, Integer.MAX_VALUE);
+		INCREMENTAL_EXPLOSION_THRESHOLD = builder.comment("The strength from which on TNT explosions destroy their blocks over multiple ticks instead of all at once. 0 disables this").defineInRange("incrementalExplosionThreshold", 0, 0, Integer.MAX_VALUE);
+		EXPLOSION_TICK_BUDGET = builder.comment("The time in milliseconds per tick that scheduled explosions and explosions destroying their blocks over multiple ticks may use in every level").defineInRange("explosionTickBudget", 20d, 1d, 1000d);
+		SCHEDULED_EXPLOSIONS = builder.comment("Whether or not TNT that runs out of fuse should be detonated by a scheduler, which spreads chain reactions over multiple ticks and detonates TNT close to players first").define("scheduledExplosions", false);
+		EXPLOSION_COALESCING_DISTANCE = builder.comment("The greatest distance in blocks between TNT of the same kind that runs out of fuse in the same tick for it to be detonated as one combined explosion, which destroys every block and queries entities only once. 0 disables this").defineInRange("explosionCoalescingDistance", 0, 0, 64);
+		CRATER_CACHE_CAPACITY = builder.comment("The number of block positions that craters of recent explosions may hold in total, so that identical explosions on identical terrain, like in arenas that are reset, only have to find their blocks once. Every position takes 12 bytes together with the state it is checked against. 0 disables this").defineInRange("craterCacheCapacity", 0, 0, Integer.MAX_VALUE);
+		OFF_HEAP_EXPLOSION_THRESHOLD = builder.comment("The number of affected blocks from which explosions keep their block positions in reusable buffers outside of the Java heap instead of large short-lived arrays, which keeps giant explosions from causing expensive garbage collections. Needs enough direct memory, see the JVM argument -XX:MaxDirectMemorySize. 0 disables this").defineInRange("offHeapExplosionThreshold", 0, 0, Integer.MAX_VALUE);
+		DEFERRED_EXPLOSION_LIGHTING = builder.comment("Whether or not light is only checked at the edges of the blocks destroyed by an explosion and over the following ticks within the time budget of the level, instead of at every destroyed block right away. Light in large craters may take a few ticks to update").define("deferredExplosionLighting", false);
+		EXPLOSION_BOUNDARY_UPDATES = builder.comment("Whether or not blocks destroyed by an explosion only update the blocks around the crater instead of also updating each other, which saves most of the neighbour and shape updates of large explosions").define("explosionBoundaryUpdates", false);
 	}
 }
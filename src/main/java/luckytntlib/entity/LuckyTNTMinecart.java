@@ -1,7 +1,6 @@
 package luckytntlib.entity;
 
 import java.util.List;
-import java.util.Random;
 import java.util.function.Supplier;
 
 import luckytntlib.block.LTNTBlock;
@@ -35,7 +34,7 @@ public class LuckyTNTMinecart extends LTNTMinecart{
 	
 	@Override
 	public void fuse() {
-		LTNTMinecart minecart = minecarts.get(new Random().nextInt(minecarts.size())).get().createMinecart(level(), getX(), getY(), getZ(), placer);
+		LTNTMinecart minecart = minecarts.get(level().random.nextInt(minecarts.size())).get().createMinecart(level(), getX(), getY(), getZ(), placer);
 		minecart.setYRot(getYRot());
 		minecart.setDeltaMovement(getDeltaMovement());
 		level().addFreshEntity(minecart);
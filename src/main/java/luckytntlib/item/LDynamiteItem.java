@@ -33,6 +33,10 @@ public class LDynamiteItem extends Item{
 	
 	@Nullable
 	protected RegistryObject<EntityType<LExplosiveProjectile>> dynamite;
+	/**
+	 * @deprecated the random of the level is used instead
+	 */
+	@Deprecated
 	protected Random random = new Random();
 	
 	public LDynamiteItem(Item.Properties properties, @Nullable RegistryObject<EntityType<LExplosiveProjectile>> dynamite) {
@@ -52,7 +52,7 @@ public class LuckyDynamiteItem extends LDynamiteItem{
 	 */
 	@Override
 	public LExplosiveProjectile shoot(Level level, double x, double y, double z, Vec3 direction, float power, LivingEntity thrower) {
-		int rand = random.nextInt(dynamites.size());
+		int rand = level.random.nextInt(dynamites.size());
 		return dynamites.get(rand).get().shoot(level, x, y, z, direction, power, thrower);
 	}
 }
@@ -0,0 +1,105 @@
+package luckytntlib.util.explosions;
+
+import java.util.function.UnaryOperator;
+
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * A BlockTransform maps the state of every block in a shape of the {@link ExplosionHelper} to a new state, like stone to air, dirt to sand or everything to glass,
+ * optionally only for blocks within a band of distances to the center of the shape.
+ * <p>
+ * Unlike an {@link IForEachBlockExplosionEffect}, a transform only depends on the state of a block, which lets the helper work on whole sections at once.
+ * The mapping is evaluated once for every state in the palette of a section, and sections whose palette holds no state the transform changes are skipped without looking at their blocks.
+ * Sections that lie entirely inside the shape and the distance band are rewritten without testing each block against the shape,
+ * and if the transform maps every state of such a section to the same state, the section is filled with it at once, see {@link BlockWriteBuffer#fillSection(int, int, int, BlockState)}.
+ * All changed blocks are written through a {@link BlockWriteBuffer}.
+ * The mapping must not depend on the position of a block or on the level and must return the given state for blocks it does not change.
+ */
+public class BlockTransform {
+
+	private final UnaryOperator<BlockState> mapping;
+	public final double minDistance, maxDistance;
+
+	private BlockTransform(UnaryOperator<BlockState> mapping, double minDistance, double maxDistance) {
+		this.mapping = mapping;
+		this.minDistance = minDistance;
+		this.maxDistance = maxDistance;
+	}
+
+	/**
+	 * @param state  the current state of a block
+	 * @return the state the block is transformed to, which is the given state if it is not changed
+	 */
+	public BlockState apply(BlockState state) {
+		return mapping.apply(state);
+	}
+
+	/**
+	 * @param distance  the distance of a block to the center of the shape
+	 * @return whether or not a block at this distance is transformed
+	 */
+	public boolean isInBand(double distance) {
+		return distance >= minDistance && distance <= maxDistance;
+	}
+
+	public static class Builder {
+
+		private UnaryOperator<BlockState> mapping = UnaryOperator.identity();
+		private double minDistance = 0, maxDistance = Double.POSITIVE_INFINITY;
+
+		public Builder() {
+		}
+
+		private Builder(UnaryOperator<BlockState> mapping, double minDistance, double maxDistance) {
+			this.mapping = mapping;
+			this.minDistance = minDistance;
+			this.maxDistance = maxDistance;
+		}
+
+		/**
+		 * The mapping from the current to the new state of a block, which replaces all mappings set before
+		 * @param mapping
+		 */
+		public Builder mapping(UnaryOperator<BlockState> mapping) {
+			return new Builder(mapping, minDistance, maxDistance);
+		}
+
+		/**
+		 * Replaces all states of the given block with the given state, on top of the mappings set before
+		 * @param block
+		 * @param replacement
+		 */
+		public Builder replace(Block block, BlockState replacement) {
+			UnaryOperator<BlockState> mapping = this.mapping;
+			return new Builder(state -> state.is(block) ? replacement : mapping.apply(state), minDistance, maxDistance);
+		}
+
+		/**
+		 * Replaces all states of blocks in the given tag with the given state, on top of the mappings set before
+		 * @param tag
+		 * @param replacement
+		 */
+		public Builder replace(TagKey<Block> tag, BlockState replacement) {
+			UnaryOperator<BlockState> mapping = this.mapping;
+			return new Builder(state -> state.is(tag) ? replacement : mapping.apply(state), minDistance, maxDistance);
+		}
+
+		/**
+		 * The band of distances to the center of the shape blocks must be in to be transformed, all distances by default
+		 * @param minDistance
+		 * @param maxDistance
+		 */
+		public Builder distance(double minDistance, double maxDistance) {
+			return new Builder(mapping, minDistance, maxDistance);
+		}
+
+		/**
+		 * Builds a new {@link BlockTransform}
+		 */
+		public BlockTransform build() {
+			return new BlockTransform(mapping, minDistance, maxDistance);
+		}
+	}
+}
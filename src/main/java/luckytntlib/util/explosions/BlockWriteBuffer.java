@@ -0,0 +1,396 @@
+package luckytntlib.util.explosions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2BooleanMap;
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.redstone.NeighborUpdater;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.lighting.LightEngine;
+
+/**
+ * A BlockWriteBuffer collects the blocks an explosion effect places and writes them all at once, which is much faster than placing them one by one
+ * for effects that change thousands of blocks. An {@link IForEachBlockExplosionEffect} can call {@link BlockWriteBuffer#setBlock(BlockPos, BlockState)}
+ * instead of {@link Level#setBlock(BlockPos, BlockState, int)}, after which {@link BlockWriteBuffer#commit()} is called once the explosion is done.
+ * <p>
+ * Only the last state set for a position is written. Writes are sorted by chunk and section and go straight into the {@link LevelChunkSection}s:
+ * every chunk is marked as unsaved once, and chunks with many writes update their heightmaps in a single pass instead of once for every block.
+ * Light checks, removal and placement logic of the blocks, neighbour and shape updates and the updates sent to clients
+ * happen just like with {@link Block#UPDATE_ALL}, but only after all blocks have been written, so no block reacts to a half written area.
+ * Changes sent to clients are gathered per section by the chunk and sent as one packet per section.
+ * Blocks with block entities, as well as all writes on the client or while block snapshots are captured, are placed through {@link Level#setBlock(BlockPos, BlockState, int)}.
+ * <p>
+ * Whole sections can be filled with a single state through {@link BlockWriteBuffer#fillSection(int, int, int, BlockState)}.
+ * A filled section gets new states holding only that state instead of being written block by block, so its palette is never resized on the way.
+ * Everything else about the changed blocks happens just like for single writes. Sections holding block entities before or after are written block by block.
+ * <p>
+ * With deferred lighting, the light engine is not asked to check every block whose light properties changed.
+ * Light only has to be checked where it can enter or leave the changed area, which are the changed blocks next to an unchanged block,
+ * and at blocks that emit a different amount of light or let less light through than before. Light spreads from there into the rest of the changed area on its own.
+ * These checks are left to the {@link ExplosionScheduler} of the level, which runs them top down over the following ticks within its time budget.
+ * <p>
+ * With boundary updates, written blocks do not update each other. Only blocks next to the written area are told about the blocks that changed next to them,
+ * which makes writing a large area cost roughly its volume and its surface instead of six neighbour and six shape updates for every block.
+ * Comparators next to the written area are still told when a block with an analog output signal, like a chest, was removed or placed.
+ * This is only right if the written blocks do not depend on each other, like air left behind by an explosion.
+ */
+public class BlockWriteBuffer {
+
+	/**
+	 * The number of writes to a chunk from which its heightmaps are calculated anew after all writes instead of being updated for every block
+	 */
+	public static final int HEIGHTMAP_PRIME_THRESHOLD = 256;
+	private static final Set<Heightmap.Types> HEIGHTMAPS = EnumSet.of(Heightmap.Types.MOTION_BLOCKING, Heightmap.Types.MOTION_BLOCKING_NO_LEAVES, Heightmap.Types.OCEAN_FLOOR, Heightmap.Types.WORLD_SURFACE);
+
+	private final Level level;
+	private final boolean deferLighting, boundaryUpdates;
+	private final Long2ObjectOpenHashMap<BlockState> writes = new Long2ObjectOpenHashMap<>();
+	private final LongOpenHashSet unplaced = new LongOpenHashSet();
+	private final Long2ObjectOpenHashMap<BlockState> fills = new Long2ObjectOpenHashMap<>();
+
+	/**
+	 * Creates a new BlockWriteBuffer
+	 * @param level  the level the blocks are written to
+	 */
+	public BlockWriteBuffer(Level level) {
+		this(level, false);
+	}
+
+	/**
+	 * Creates a new BlockWriteBuffer
+	 * @param level  the level the blocks are written to
+	 * @param deferLighting  whether or not light should only be checked where needed and over the following ticks. Only used in a {@link ServerLevel}
+	 */
+	public BlockWriteBuffer(Level level, boolean deferLighting) {
+		this(level, deferLighting, false);
+	}
+
+	/**
+	 * Creates a new BlockWriteBuffer
+	 * @param level  the level the blocks are written to
+	 * @param deferLighting  whether or not light should only be checked where needed and over the following ticks. Only used in a {@link ServerLevel}
+	 * @param boundaryUpdates  whether or not only the blocks next to the written area should receive neighbour and shape updates
+	 */
+	public BlockWriteBuffer(Level level, boolean deferLighting, boolean boundaryUpdates) {
+		this.level = level;
+		this.deferLighting = deferLighting;
+		this.boundaryUpdates = boundaryUpdates;
+	}
+
+	/**
+	 * Sets the state a block will be written with, replacing any state set for the same position before.
+	 * @param pos  the position of the block
+	 * @param state  the new state
+	 */
+	public void setBlock(BlockPos pos, BlockState state) {
+		setBlock(pos, state, true);
+	}
+
+	/**
+	 * Sets the state a block will be written with, replacing any state set for the same position before.
+	 * @param pos  the position of the block
+	 * @param state  the new state
+	 * @param place  whether or not {@link BlockState#onPlace} of the new state should be called, which may be skipped for blocks that would only schedule a tick there that is known to do nothing
+	 */
+	public void setBlock(BlockPos pos, BlockState state, boolean place) {
+		writes.put(pos.asLong(), state);
+		if(place) {
+			unplaced.remove(pos.asLong());
+		}
+		else {
+			unplaced.add(pos.asLong());
+		}
+	}
+
+	/**
+	 * Sets the state all blocks of a section will be written with, replacing any state set for the whole section before.
+	 * Blocks of the section set through {@link BlockWriteBuffer#setBlock(BlockPos, BlockState)} are written after the section has been filled.
+	 * @param sectionX  the x position of the section
+	 * @param sectionY  the y position of the section
+	 * @param sectionZ  the z position of the section
+	 * @param state  the new state
+	 */
+	public void fillSection(int sectionX, int sectionY, int sectionZ, BlockState state) {
+		fills.put(SectionPos.asLong(sectionX, sectionY, sectionZ), state);
+	}
+
+	/**
+	 * Gets the state of a block as it will be once this buffer has been committed.
+	 * @param pos  the position of the block
+	 * @return the state set for the block or its current state in the level
+	 */
+	public BlockState getBlockState(BlockPos pos) {
+		BlockState state = writes.get(pos.asLong());
+		if(state == null) {
+			state = fills.get(SectionPos.asLong(pos));
+		}
+		return state == null ? level.getBlockState(pos) : state;
+	}
+
+	/**
+	 * @return the number of blocks that will be written
+	 */
+	public int size() {
+		return writes.size() + fills.size() * 4096;
+	}
+
+	public boolean isEmpty() {
+		return writes.isEmpty() && fills.isEmpty();
+	}
+
+	/**
+	 * Writes all blocks of this buffer to the level, chunk by chunk, and empties this buffer.
+	 */
+	public void commit() {
+		if(isEmpty()) {
+			return;
+		}
+		if(level.isClientSide || level.captureBlockSnapshots) {
+			for(long sectionPos : fills.keySet()) {
+				splitFill(sectionPos);
+			}
+			fills.clear();
+		}
+		LevelLightEngine lightEngine = level.getChunkSource().getLightEngine();
+		@Nullable Long2BooleanOpenHashMap lightChanges = deferLighting && level instanceof ServerLevel ? new Long2BooleanOpenHashMap() : null;
+		List<Written> written = new ArrayList<>();
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		for(Long2ObjectMap.Entry<BlockState> fill : fills.long2ObjectEntrySet()) {
+			fill(fill.getLongKey(), fill.getValue(), lightEngine, lightChanges, written);
+		}
+		fills.clear();
+		long[] keys = new long[writes.size()];
+		int index = 0;
+		for(long write : writes.keySet()) {
+			keys[index++] = ExplosionResult.toKey(BlockPos.getX(write), BlockPos.getY(write), BlockPos.getZ(write));
+		}
+		Arrays.sort(keys);
+		if(level.isClientSide || level.captureBlockSnapshots) {
+			for(long key : keys) {
+				ExplosionResult.fromKey(key, pos);
+				level.setBlock(pos, writes.get(pos.asLong()), Block.UPDATE_ALL);
+			}
+			writes.clear();
+			unplaced.clear();
+			return;
+		}
+		long lastSection = Long.MAX_VALUE;
+		for(int start = 0; start < keys.length;) {
+			ExplosionResult.fromKey(keys[start], pos);
+			int chunkX = SectionPos.blockToSectionCoord(pos.getX()), chunkZ = SectionPos.blockToSectionCoord(pos.getZ());
+			int end = start + 1;
+			while(end < keys.length && ExplosionResult.isSameChunk(keys[start], keys[end])) {
+				end++;
+			}
+			LevelChunk chunk = level.getChunk(chunkX, chunkZ);
+			boolean prime = end - start >= HEIGHTMAP_PRIME_THRESHOLD;
+			boolean changed = false;
+			for(int i = start; i < end; i++) {
+				ExplosionResult.fromKey(keys[i], pos);
+				BlockState state = writes.get(pos.asLong());
+				if(level.isOutsideBuildHeight(pos)) {
+					continue;
+				}
+				LevelChunkSection section = chunk.getSection(chunk.getSectionIndex(pos.getY()));
+				int x = pos.getX() & 15, y = pos.getY() & 15, z = pos.getZ() & 15;
+				BlockState old = section.getBlockState(x, y, z);
+				if(old == state) {
+					continue;
+				}
+				if(old.hasBlockEntity() || state.hasBlockEntity()) {
+					level.setBlock(pos, state, Block.UPDATE_ALL);
+					continue;
+				}
+				boolean wasEmpty = section.hasOnlyAir();
+				section.setBlockState(x, y, z, state, false);
+				changed = true;
+				if(SectionPos.asLong(pos) != lastSection) {
+					lastSection = SectionPos.asLong(pos);
+					ExplosionCraterCache.invalidate(level, lastSection);
+				}
+				if(!prime) {
+					for(Heightmap.Types type : HEIGHTMAPS) {
+						chunk.getOrCreateHeightmapUnprimed(type).update(x, pos.getY(), z, state);
+					}
+				}
+				if(wasEmpty != section.hasOnlyAir()) {
+					lightEngine.updateSectionStatus(pos, !wasEmpty);
+				}
+				addWritten(chunk, pos, old, state, !unplaced.contains(pos.asLong()), lightEngine, lightChanges, written);
+			}
+			if(changed) {
+				if(prime) {
+					Heightmap.primeHeightmaps(chunk, HEIGHTMAPS);
+				}
+				chunk.setUnsaved(true);
+			}
+			start = end;
+		}
+		writes.clear();
+		unplaced.clear();
+		if(lightChanges != null) {
+			ExplosionScheduler.get((ServerLevel)level).relight(getLightChecks(lightChanges));
+		}
+		for(Written write : written) {
+			write.old.onRemove(level, write.pos, write.state, false);
+			if(write.place && write.chunk.getBlockState(write.pos).is(write.state.getBlock())) {
+				write.state.onPlace(level, write.pos, write.old, false);
+			}
+		}
+		if(!boundaryUpdates) {
+			for(Written write : written) {
+				level.markAndNotifyBlock(write.pos, write.chunk, write.old, write.state, Block.UPDATE_ALL, 512);
+			}
+			return;
+		}
+		LongOpenHashSet positions = new LongOpenHashSet(written.size());
+		for(Written write : written) {
+			positions.add(write.pos.asLong());
+			level.markAndNotifyBlock(write.pos, write.chunk, write.old, write.state, Block.UPDATE_CLIENTS | Block.UPDATE_KNOWN_SHAPE, 512);
+		}
+		for(Written write : written) {
+			updateBoundary(write, positions);
+		}
+	}
+
+	/**
+	 * Queues a single write for every block of a filled section that has no single write yet.
+	 */
+	private void splitFill(long sectionPos) {
+		BlockState state = fills.get(sectionPos);
+		BlockPos origin = SectionPos.of(sectionPos).origin();
+		for(BlockPos pos : BlockPos.betweenClosed(origin, origin.offset(15, 15, 15))) {
+			if(!writes.containsKey(pos.asLong())) {
+				writes.put(pos.asLong(), state);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the states of a filled section at once, unless a block entity is involved, in which case the section is written block by block.
+	 */
+	private void fill(long sectionPos, BlockState state, LevelLightEngine lightEngine, @Nullable Long2BooleanOpenHashMap lightChanges, List<Written> written) {
+		int sectionY = SectionPos.y(sectionPos);
+		if(sectionY < level.getMinSection() || sectionY >= level.getMaxSection()) {
+			return;
+		}
+		LevelChunk chunk = level.getChunk(SectionPos.x(sectionPos), SectionPos.z(sectionPos));
+		LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(sectionY));
+		PalettedContainer<BlockState> oldStates = section.getStates();
+		if(state.hasBlockEntity() || oldStates.maybeHas(BlockState::hasBlockEntity)) {
+			splitFill(sectionPos);
+			return;
+		}
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		boolean wasEmpty = section.hasOnlyAir();
+		section.states = new PalettedContainer<>(Block.BLOCK_STATE_REGISTRY, state, PalettedContainer.Strategy.SECTION_STATES);
+		section.recalcBlockCounts();
+		ExplosionCraterCache.invalidate(level, sectionPos);
+		if(wasEmpty != section.hasOnlyAir()) {
+			lightEngine.updateSectionStatus(SectionPos.of(sectionPos).origin(), !wasEmpty);
+		}
+		for(int y = 0; y < 16; y++) {
+			for(int z = 0; z < 16; z++) {
+				for(int x = 0; x < 16; x++) {
+					BlockState old = oldStates.get(x, y, z);
+					if(old != state) {
+						pos.set(SectionPos.sectionToBlockCoord(SectionPos.x(sectionPos), x), SectionPos.sectionToBlockCoord(sectionY, y), SectionPos.sectionToBlockCoord(SectionPos.z(sectionPos), z));
+						addWritten(chunk, pos, old, state, true, lightEngine, lightChanges, written);
+					}
+				}
+			}
+		}
+		Heightmap.primeHeightmaps(chunk, HEIGHTMAPS);
+		chunk.setUnsaved(true);
+	}
+
+	/**
+	 * Checks the light at a block that has been written straight into its section, or leaves the check for later, and remembers the block for the updates that follow.
+	 */
+	private void addWritten(LevelChunk chunk, BlockPos.MutableBlockPos pos, BlockState old, BlockState state, boolean place, LevelLightEngine lightEngine, @Nullable Long2BooleanOpenHashMap lightChanges, List<Written> written) {
+		if(LightEngine.hasDifferentLightProperties(chunk, pos, old, state)) {
+			chunk.getSkyLightSources().update(chunk, pos.getX() & 15, pos.getY(), pos.getZ() & 15);
+			if(lightChanges != null) {
+				lightChanges.put(pos.asLong(), needsLightCheck(pos, old, state));
+			}
+			else {
+				lightEngine.checkBlock(pos);
+			}
+		}
+		written.add(new Written(pos.immutable(), chunk, old, state, place));
+	}
+
+	/**
+	 * Sends the neighbour and shape updates of a written block to those of its neighbours that have not been written,
+	 * as well as the updates to diagonal neighbours some blocks like redstone wire need and the update comparators need if the old or new block has an analog output signal.
+	 */
+	private void updateBoundary(Written write, LongOpenHashSet positions) {
+		for(Direction direction : NeighborUpdater.UPDATE_ORDER) {
+			if(!positions.contains(BlockPos.offset(write.pos.asLong(), direction))) {
+				level.neighborChanged(write.pos.relative(direction), write.old.getBlock(), write.pos);
+			}
+		}
+		for(Direction direction : NeighborUpdater.UPDATE_SHAPE_ORDER) {
+			if(!positions.contains(BlockPos.offset(write.pos.asLong(), direction))) {
+				level.neighborShapeChanged(direction.getOpposite(), write.state, write.pos.relative(direction), write.pos, Block.UPDATE_ALL, 511);
+			}
+		}
+		write.old.updateIndirectNeighbourShapes(level, write.pos, Block.UPDATE_ALL, 511);
+		write.state.updateIndirectNeighbourShapes(level, write.pos, Block.UPDATE_ALL, 511);
+		if(write.state.hasAnalogOutputSignal()) {
+			level.updateNeighbourForOutputSignal(write.pos, write.state.getBlock());
+		}
+		else if(write.old.hasAnalogOutputSignal()) {
+			level.updateNeighbourForOutputSignal(write.pos, write.old.getBlock());
+		}
+	}
+
+	/**
+	 * @return whether or not light has to be checked at a changed block even if it is surrounded by changed blocks
+	 */
+	private boolean needsLightCheck(BlockPos pos, BlockState old, BlockState state) {
+		return old.getLightEmission(level, pos) != state.getLightEmission(level, pos) || state.getLightBlock(level, pos) > old.getLightBlock(level, pos) || old.useShapeForLightOcclusion() || state.useShapeForLightOcclusion();
+	}
+
+	/**
+	 * Picks the changed blocks light has to be checked at: those that need a check of their own and those next to a block whose light properties did not change.
+	 */
+	private static long[] getLightChecks(Long2BooleanOpenHashMap lightChanges) {
+		LongArrayList checks = new LongArrayList();
+		for(Long2BooleanMap.Entry entry : lightChanges.long2BooleanEntrySet()) {
+			long pos = entry.getLongKey();
+			boolean check = entry.getBooleanValue();
+			for(int i = 0; !check && i < 6; i++) {
+				check = !lightChanges.containsKey(BlockPos.offset(pos, Direction.from3DDataValue(i)));
+			}
+			if(check) {
+				checks.add(pos);
+			}
+		}
+		return checks.toLongArray();
+	}
+
+	private static record Written(BlockPos pos, LevelChunk chunk, BlockState old, BlockState state, boolean place) {
+	}
+}
@@ -0,0 +1,221 @@
+package luckytntlib.util.explosions;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.material.FluidState;
+import net.minecraft.world.level.material.Fluids;
+
+/**
+ * A ChunkSectionCursor reads blocks of a {@link Level} while remembering the last {@link LevelChunk} and {@link LevelChunkSection} it has used.
+ * <p>
+ * Explosions and the functions of the {@link ExplosionHelper} read blocks that are close to each other,
+ * so consecutive reads almost always land in the same 16x16x16 section.
+ * In that case the states are read straight from the section instead of looking up the chunk and section again.
+ * @implNote a ChunkSectionCursor is not thread safe and should only be used for the duration of one explosion
+ */
+public class ChunkSectionCursor implements IExplosionBlockReader {
+
+	private static final BlockState VOID_AIR = Blocks.VOID_AIR.defaultBlockState();
+	private static final FluidState EMPTY = Fluids.EMPTY.defaultFluidState();
+
+	private final Level level;
+	private final int minSection;
+	private int chunkX, chunkZ, sectionY;
+	@Nullable private LevelChunk chunk;
+	@Nullable private LevelChunkSection section;
+	private final Long2IntOpenHashMap surfaces = new Long2IntOpenHashMap();
+	private boolean cacheSurfaces = true;
+	private int emptyMinY, emptyMaxY;
+
+	public ChunkSectionCursor(Level level) {
+		this.level = level;
+		minSection = level.getMinSection();
+		surfaces.defaultReturnValue(Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Gets the section containing the given position, loading its chunk if necessary just like {@link Level#getBlockState(BlockPos)} would.
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 * @return the {@link LevelChunkSection} or null if the position is outside of the build height
+	 */
+	@Nullable
+	public LevelChunkSection getSection(int x, int y, int z) {
+		if(level.isOutsideBuildHeight(y)) {
+			return null;
+		}
+		int chunkX = SectionPos.blockToSectionCoord(x);
+		int chunkZ = SectionPos.blockToSectionCoord(z);
+		int sectionY = SectionPos.blockToSectionCoord(y);
+		if(chunk == null || chunkX != this.chunkX || chunkZ != this.chunkZ) {
+			chunk = level.getChunk(chunkX, chunkZ);
+			this.chunkX = chunkX;
+			this.chunkZ = chunkZ;
+			section = null;
+		}
+		if(section == null || sectionY != this.sectionY) {
+			section = chunk.getSection(sectionY - minSection);
+			this.sectionY = sectionY;
+		}
+		return section;
+	}
+
+	/**
+	 * Checks whether or not the given position lies in an area that is known to contain only air, without reading the block itself.
+	 * Such an area is either a section that only contains air, everything above the highest block of a chunk or a whole chunk that is not loaded.
+	 * If so, the area spans the chunk column of the position from {@link ChunkSectionCursor#getEmptyMinY()} to {@link ChunkSectionCursor#getEmptyMaxY()}.
+	 * @implNote unlike the other methods this one never loads chunks
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 * @return whether or not the position lies in an empty area
+	 */
+	@Override
+	public boolean isInEmptyArea(int x, int y, int z) {
+		if(level.isOutsideBuildHeight(y)) {
+			return false;
+		}
+		int chunkX = SectionPos.blockToSectionCoord(x);
+		int chunkZ = SectionPos.blockToSectionCoord(z);
+		if(chunk == null || chunkX != this.chunkX || chunkZ != this.chunkZ) {
+			LevelChunk chunk = level.getChunkSource().getChunkNow(chunkX, chunkZ);
+			if(chunk == null) {
+				emptyMinY = level.getMinBuildHeight();
+				emptyMaxY = level.getMaxBuildHeight();
+				return true;
+			}
+			this.chunk = chunk;
+			this.chunkX = chunkX;
+			this.chunkZ = chunkZ;
+			section = null;
+		}
+		if(cacheSurfaces) {
+			int surface = getSurface(chunk);
+			if(y >= surface) {
+				emptyMinY = surface;
+				emptyMaxY = level.getMaxBuildHeight();
+				return true;
+			}
+		}
+		LevelChunkSection section = getSection(x, y, z);
+		if(section != null && section.hasOnlyAir()) {
+			emptyMinY = SectionPos.sectionToBlockCoord(sectionY);
+			emptyMaxY = emptyMinY + 16;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the lowest y position of the area found by the last successful {@link ChunkSectionCursor#isInEmptyArea(int, int, int)}
+	 */
+	@Override
+	public int getEmptyMinY() {
+		return emptyMinY;
+	}
+
+	/**
+	 * @return the highest y position, exclusive, of the area found by the last successful {@link ChunkSectionCursor#isInEmptyArea(int, int, int)}
+	 */
+	@Override
+	public int getEmptyMaxY() {
+		return emptyMaxY;
+	}
+
+	/**
+	 * Gets the y position above the highest block of a chunk, which is cached until the next {@link ChunkSectionCursor#beginTrace(boolean)} or {@link ChunkSectionCursor#reset()}.
+	 */
+	private int getSurface(LevelChunk chunk) {
+		long key = ChunkPos.asLong(chunkX, chunkZ);
+		int surface = surfaces.get(key);
+		if(surface == Integer.MIN_VALUE) {
+			surface = level.getMinBuildHeight();
+			for(int x = 0; x < 16; x++) {
+				for(int z = 0; z < 16; z++) {
+					surface = Math.max(surface, chunk.getHeight(Heightmap.Types.WORLD_SURFACE, x, z) + 1);
+				}
+			}
+			surfaces.put(key, surface);
+		}
+		return surface;
+	}
+
+	/**
+	 * Gets the {@link BlockState} at the given position
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 * @return the BlockState
+	 */
+	@Override
+	public BlockState getBlockState(int x, int y, int z) {
+		LevelChunkSection section = getSection(x, y, z);
+		return section == null ? VOID_AIR : section.getBlockState(x & 15, y & 15, z & 15);
+	}
+
+	/**
+	 * Gets the {@link BlockState} at the given position
+	 * @param pos  the position
+	 * @return the BlockState
+	 */
+	@Override
+	public BlockState getBlockState(BlockPos pos) {
+		return getBlockState(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	/**
+	 * Gets the {@link FluidState} at the given position
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 * @return the FluidState
+	 */
+	public FluidState getFluidState(int x, int y, int z) {
+		LevelChunkSection section = getSection(x, y, z);
+		return section == null ? EMPTY : section.getFluidState(x & 15, y & 15, z & 15);
+	}
+
+	/**
+	 * Gets the {@link FluidState} at the given position
+	 * @param pos  the position
+	 * @return the FluidState
+	 */
+	public FluidState getFluidState(BlockPos pos) {
+		return getFluidState(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	/**
+	 * Forgets the cached chunks and sections, which is required if chunks may have been unloaded or changed since the last read.
+	 */
+	public void reset() {
+		chunk = null;
+		section = null;
+		surfaces.clear();
+	}
+
+	/**
+	 * Forgets all cached chunks, sections and surfaces before blocks are traced through this cursor, as blocks may have been placed since the surfaces were cached.
+	 * Sections containing only air are always recognized by {@link ChunkSectionCursor#isInEmptyArea(int, int, int)},
+	 * the whole area above the surface of a chunk only if its surface may be cached.
+	 * @param cacheSurfaces  whether or not the surfaces of chunks may be cached, which is only right if no blocks are placed until the trace is done or paused
+	 */
+	public void beginTrace(boolean cacheSurfaces) {
+		reset();
+		this.cacheSurfaces = cacheSurfaces;
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+}
@@ -0,0 +1,128 @@
+package luckytntlib.util.explosions;
+
+import java.util.List;
+
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.item.enchantment.ProtectionEnchantment;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.event.ForgeEventFactory;
+
+/**
+ * A CoalescedExplosion combines several {@link ImprovedExplosion}s that happen close to each other at the same time into one explosion.
+ * <p>
+ * The first explosion is the primary one: the blocks of all explosions are gathered in one {@link ExplosionBlockSet},
+ * so every block is only checked against the condition stage and destroyed once, and the primary explosion fires the only {@link net.minecraftforge.event.level.ExplosionEvent.Detonate}
+ * and destroys all blocks with {@link CoalescedExplosion#applyBlockExplosion(boolean)}.
+ * Entities are gathered by a single query over the area of all explosions. An entity hit by several explosions is thrown back by the sum of their knockback,
+ * but only takes the damage of the explosion that hits it hardest, just like it would after the first hit made it invulnerable for a short time.
+ * <p>
+ * All explosions find their blocks in the level as it was before any of them, so unlike explosions happening one after another they do not reach farther through each others craters.
+ */
+public class CoalescedExplosion {
+
+	private final ImprovedExplosion primary;
+	private final List<ImprovedExplosion> explosions;
+
+	/**
+	 * Creates a new CoalescedExplosion
+	 * @param explosions  the explosions to combine, which must all happen in the same level
+	 */
+	public CoalescedExplosion(List<ImprovedExplosion> explosions) {
+		if(explosions.isEmpty()) {
+			throw new IllegalArgumentException("A coalesced explosion needs at least one explosion");
+		}
+		this.primary = explosions.get(0);
+		this.explosions = explosions;
+	}
+
+	/**
+	 * @return the explosion that holds the blocks of all explosions
+	 */
+	public ImprovedExplosion getPrimary() {
+		return primary;
+	}
+
+	/**
+	 * Finds the blocks of all explosions with the given {@link ExplosionPipeline} and gathers them in the primary explosion,
+	 * where they can be vetoed before being destroyed by {@link CoalescedExplosion#applyBlockExplosion(boolean)}.
+	 * @param pipeline  the ExplosionPipeline
+	 */
+	public void calculateBlockExplosion(ExplosionPipeline pipeline) {
+		ExplosionBlockSet blocks = primary.collectBlocks(pipeline);
+		for(int i = 1; i < explosions.size(); i++) {
+			explosions.get(i).collectBlocks(pipeline, blocks);
+		}
+		primary.addPendingBlocks(blocks);
+	}
+
+	/**
+	 * Destroys the blocks found by {@link CoalescedExplosion#calculateBlockExplosion(ExplosionPipeline)}.
+	 * @param fire  whether or not fire should be placed
+	 */
+	public void applyBlockExplosion(boolean fire) {
+		primary.applyBlockExplosion(fire);
+	}
+
+	/**
+	 * Destroys the blocks found by {@link CoalescedExplosion#calculateBlockExplosion(ExplosionPipeline)} and may fill the combined crater with the fluids around it.
+	 * @param fire  whether or not fire should be placed
+	 * @param settleFluids  whether or not fluids should flow into the crater at once
+	 */
+	public void applyBlockExplosion(boolean fire, boolean settleFluids) {
+		primary.applyBlockExplosion(fire, settleFluids);
+	}
+
+	/**
+	 * Damages and throws back all entities affected by any of the explosions.
+	 * @param knockbackStrength  multiplier to the strength of the knockback
+	 * @param damageEntities  whether or not entities should be damaged
+	 */
+	public void doEntityExplosion(float knockbackStrength, boolean damageEntities) {
+		Level level = primary.level;
+		AABB area = primary.getEntityArea();
+		float radius = primary.size * 2;
+		for(int i = 1; i < explosions.size(); i++) {
+			area = area.minmax(explosions.get(i).getEntityArea());
+			radius = Math.max(radius, explosions.get(i).size * 2);
+		}
+		List<Entity> entities = level.getEntities(primary.getDirectSourceEntity(), area);
+		ForgeEventFactory.onExplosionDetonate(level, primary, entities, radius);
+		for(Entity entity : entities) {
+			float damage = -1;
+			Vec3 knockback = Vec3.ZERO;
+			Vec3 impact = Vec3.ZERO;
+			for(ImprovedExplosion explosion : explosions) {
+				float strength = explosion.getHitStrength(entity);
+				if(strength < 0) {
+					continue;
+				}
+				Vec3 direction = explosion.getHitDirection(entity);
+				damage = Math.max(damage, explosion.getDamage(strength));
+				double dampened = strength;
+				if(entity instanceof LivingEntity lEnt) {
+					dampened = ProtectionEnchantment.getExplosionKnockbackAfterDampener(lEnt, strength);
+				}
+				knockback = knockback.add(direction.scale(dampened * knockbackStrength));
+				impact = impact.add(direction.scale(strength));
+			}
+			if(damage < 0) {
+				continue;
+			}
+			if(damageEntities) {
+				entity.hurt(primary.damageSource, damage);
+			}
+			entity.setDeltaMovement(entity.getDeltaMovement().add(knockback));
+			if(entity instanceof Player) {
+				Player player = (Player)entity;
+				player.hurtMarked = true;
+				if(!player.isSpectator() && (!player.isCreative() || !player.getAbilities().flying)) {
+					primary.getHitPlayers().put(player, impact);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package luckytntlib.util.explosions;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+import luckytntlib.LuckyTNTLib;
+import net.minecraft.core.BlockPos;
+import net.minecraft.gametest.framework.GameTest;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.gametest.GameTestHolder;
+import net.minecraftforge.gametest.PrefixGameTestTemplate;
+
+/**
+ * Game tests making sure that finding the blocks of an explosion does not allocate for every step of an explosion vector,
+ * as explosion bursts used to be the main source of young generation pauses.
+ * <p>
+ * They run on the game test server, see the gameTestServer run, which is also started by the test task of the build.
+ */
+@GameTestHolder(LuckyTNTLib.MODID)
+@PrefixGameTestTemplate(false)
+public class ExplosionAllocationTests {
+
+	private static final int SIZE = 6;
+	private static final int RUNS = 8;
+	/**
+	 * The bytes an explosion may allocate for every block it finds. The sets and lists holding the blocks need far less,
+	 * while a position allocated for every step of every vector needs several kilobytes, as the vectors step through every block multiple times
+	 */
+	private static final long MAX_BYTES_PER_BLOCK = 2048;
+
+	/**
+	 * Measures the bytes allocated by the server thread with {@link ThreadMXBean#getThreadAllocatedBytes(long)} while finding the blocks of explosions in glass,
+	 * which the vectors take many steps through, after a first explosion has loaded all classes.
+	 */
+	@GameTest(template = "explosion_area")
+	public static void explosionAllocation(GameTestHelper helper) {
+		ServerLevel level = helper.getLevel();
+		BlockPos corner = helper.absolutePos(BlockPos.ZERO);
+		for(BlockPos pos : BlockPos.betweenClosed(corner, corner.offset(16, 16, 16))) {
+			level.setBlock(pos, Blocks.GLASS.defaultBlockState(), Block.UPDATE_CLIENTS);
+		}
+		Vec3 center = Vec3.atCenterOf(corner.offset(8, 8, 8));
+		ExplosionPlan plan = ExplosionPlan.get(SIZE, 1f, 1f);
+		calculateExplosion(level, center, plan);
+		ThreadMXBean threads = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().threadId();
+		long blocks = 0;
+		long before = threads.getThreadAllocatedBytes(thread);
+		for(int run = 0; run < RUNS; run++) {
+			blocks += calculateExplosion(level, center, plan);
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		helper.assertTrue(blocks > 0, "The explosions did not find any block");
+		helper.assertTrue(allocated <= blocks * MAX_BYTES_PER_BLOCK, RUNS + " explosions allocated " + allocated + " bytes for " + blocks + " blocks");
+		helper.succeed();
+	}
+
+	/**
+	 * @return the number of blocks found by a new explosion at the given center
+	 */
+	private static int calculateExplosion(ServerLevel level, Vec3 center, ExplosionPlan plan) {
+		ImprovedExplosion explosion = new ImprovedExplosion(level, center, SIZE);
+		explosion.calculateBlockExplosion(plan, 1f, 1f, false);
+		return explosion.getToBlow().size();
+	}
+}
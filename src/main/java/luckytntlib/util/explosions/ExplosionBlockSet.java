@@ -0,0 +1,318 @@
+package luckytntlib.util.explosions;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.LevelHeightAccessor;
+
+/**
+ * An ExplosionBlockSet is a set of block positions built for the blocks affected by an explosion.
+ * <p>
+ * Positions are stored as one bit per block in 4096 bit bitmaps, one for every 16x16x16 section.
+ * For small and medium explosions the sections of the cube around the explosion are looked up by their index in a dense array,
+ * whose bitmaps are only allocated once a section is actually hit.
+ * For huge explosions, where that cube would be too large, the bitmaps are kept in a map instead.
+ * Positions outside of the cube are accepted as well and kept in the map.
+ * <p>
+ * Iteration happens section by section, with the sections of a chunk column following each other.
+ */
+public class ExplosionBlockSet {
+
+	/**
+	 * The largest number of sections for which the dense array is used, whose references amount to at most 64 KB before any section is hit
+	 */
+	public static final int MAX_DENSE_SECTIONS = 8192;
+	private static final int WORDS_PER_SECTION = 64;
+
+	private final int minSectionX, minSectionY, minSectionZ;
+	private final int sizeX, sizeY, sizeZ;
+	@Nullable private final long[][] dense;
+	@Nullable private Long2ObjectOpenHashMap<long[]> sparse;
+	private int size;
+
+	/**
+	 * Creates a new ExplosionBlockSet that only allocates the bitmaps of sections that are actually hit
+	 */
+	public ExplosionBlockSet() {
+		minSectionX = minSectionY = minSectionZ = 0;
+		sizeX = sizeY = sizeZ = 0;
+		dense = null;
+	}
+
+	/**
+	 * Creates a new ExplosionBlockSet for an explosion
+	 * @param level  the level the explosion happens in, used to limit the cube to the build height
+	 * @param center  the center of the explosion
+	 * @param radius  the greatest distance from the center a block of the explosion can have
+	 */
+	public ExplosionBlockSet(LevelHeightAccessor level, BlockPos center, double radius) {
+		int r = (int)Math.ceil(Math.max(radius, 0));
+		minSectionX = SectionPos.blockToSectionCoord(center.getX() - r);
+		minSectionZ = SectionPos.blockToSectionCoord(center.getZ() - r);
+		minSectionY = Math.max(SectionPos.blockToSectionCoord(center.getY() - r), level.getMinSection());
+		sizeX = SectionPos.blockToSectionCoord(center.getX() + r) - minSectionX + 1;
+		sizeZ = SectionPos.blockToSectionCoord(center.getZ() + r) - minSectionZ + 1;
+		sizeY = Math.max(0, Math.min(SectionPos.blockToSectionCoord(center.getY() + r), level.getMaxSection() - 1) - minSectionY + 1);
+		long sections = (long)sizeX * sizeY * sizeZ;
+		dense = sections > 0 && sections <= MAX_DENSE_SECTIONS ? new long[(int)sections][] : null;
+	}
+
+	/**
+	 * @return the index of the given section in the dense array or -1 if it is not part of it
+	 */
+	private int getDenseIndex(int sectionX, int sectionY, int sectionZ) {
+		if(dense == null) {
+			return -1;
+		}
+		int offX = sectionX - minSectionX;
+		int offY = sectionY - minSectionY;
+		int offZ = sectionZ - minSectionZ;
+		if(offX < 0 || offX >= sizeX || offY < 0 || offY >= sizeY || offZ < 0 || offZ >= sizeZ) {
+			return -1;
+		}
+		return (offX * sizeZ + offZ) * sizeY + offY;
+	}
+
+	/**
+	 * @return the bitmap of the given section, which is allocated if the section has not been hit yet
+	 */
+	private long[] getOrCreateWords(int sectionX, int sectionY, int sectionZ) {
+		int index = getDenseIndex(sectionX, sectionY, sectionZ);
+		if(index >= 0) {
+			long[] words = dense[index];
+			if(words == null) {
+				words = dense[index] = new long[WORDS_PER_SECTION];
+			}
+			return words;
+		}
+		if(sparse == null) {
+			sparse = new Long2ObjectOpenHashMap<>();
+		}
+		return sparse.computeIfAbsent(SectionPos.asLong(sectionX, sectionY, sectionZ), key -> new long[WORDS_PER_SECTION]);
+	}
+
+	private static int getBit(int x, int y, int z) {
+		return (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+	}
+
+	/**
+	 * Adds a position to this set.
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 * @return whether or not the position was not part of this set yet
+	 */
+	public boolean add(int x, int y, int z) {
+		int sectionX = x >> 4, sectionY = y >> 4, sectionZ = z >> 4;
+		int bit = getBit(x, y, z);
+		long mask = 1L << bit;
+		long[] words = getOrCreateWords(sectionX, sectionY, sectionZ);
+		int word = bit >> 6;
+		if((words[word] & mask) != 0) {
+			return false;
+		}
+		words[word] |= mask;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Adds a position to this set.
+	 * @param pos  the position
+	 * @return whether or not the position was not part of this set yet
+	 */
+	public boolean add(BlockPos pos) {
+		return add(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	/**
+	 * Checks whether or not a position is part of this set.
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 */
+	public boolean contains(int x, int y, int z) {
+		int sectionX = x >> 4, sectionY = y >> 4, sectionZ = z >> 4;
+		int bit = getBit(x, y, z);
+		int index = getDenseIndex(sectionX, sectionY, sectionZ);
+		long[] words;
+		if(index >= 0) {
+			words = dense[index];
+		}
+		else if(sparse == null) {
+			return false;
+		}
+		else {
+			words = sparse.get(SectionPos.asLong(sectionX, sectionY, sectionZ));
+		}
+		return words != null && (words[bit >> 6] & 1L << bit) != 0;
+	}
+
+	/**
+	 * Checks whether or not a position is part of this set.
+	 * @param pos  the position
+	 */
+	public boolean contains(BlockPos pos) {
+		return contains(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	/**
+	 * Adds all positions of another set to this one, merging them a whole section at a time.
+	 * @param other  the other ExplosionBlockSet
+	 */
+	public void addAll(ExplosionBlockSet other) {
+		other.forEachSection((sectionX, sectionY, sectionZ, words) -> {
+			long[] target = getOrCreateWords(sectionX, sectionY, sectionZ);
+			for(int word = 0; word < WORDS_PER_SECTION; word++) {
+				long added = words[word] & ~target[word];
+				if(added != 0) {
+					target[word] |= added;
+					size += Long.bitCount(added);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the number of positions in this set
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all positions from this set.
+	 */
+	public void clear() {
+		if(dense != null) {
+			Arrays.fill(dense, null);
+		}
+		sparse = null;
+		size = 0;
+	}
+
+	/**
+	 * Passes every position of this set to the action, section by section.
+	 * @implNote the position passed is mutable and must be copied if it is kept
+	 * @param action  the action
+	 */
+	public void forEach(Consumer<BlockPos> action) {
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		forEachSection((sectionX, sectionY, sectionZ, words) -> {
+			int minX = SectionPos.sectionToBlockCoord(sectionX);
+			int minY = SectionPos.sectionToBlockCoord(sectionY);
+			int minZ = SectionPos.sectionToBlockCoord(sectionZ);
+			for(int word = 0; word < WORDS_PER_SECTION; word++) {
+				long bits = words[word];
+				while(bits != 0) {
+					int bit = word << 6 | Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					action.accept(pos.set(minX + (bit & 15), minY + (bit >> 8), minZ + (bit >> 4 & 15)));
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return all positions of this set as longs, see {@link BlockPos#asLong()}, in the order of iteration
+	 */
+	public long[] toLongArray() {
+		long[] positions = new long[size];
+		int[] index = new int[1];
+		forEach(pos -> positions[index[0]++] = pos.asLong());
+		return positions;
+	}
+
+	/**
+	 * Works like {@link ExplosionBlockSet#toLongArray()}, but the positions of giant explosions are kept outside of the heap.
+	 * The buffer should be returned through {@link ExplosionBufferPool#release(LongBuffer)} once it is not needed anymore.
+	 * @return all positions of this set as longs in the first {@link ExplosionBlockSet#size()} elements of the buffer
+	 */
+	LongBuffer toLongBuffer() {
+		LongBuffer positions = ExplosionBufferPool.acquire(size);
+		int[] index = new int[1];
+		forEach(pos -> positions.put(index[0]++, pos.asLong()));
+		return positions;
+	}
+
+	/**
+	 * Passes the bitmap of every section containing at least one position to the action,
+	 * first those of the dense array and then those of the map, ordered by chunk column.
+	 */
+	private void forEachSection(ISectionAction action) {
+		if(dense != null) {
+			for(int offX = 0; offX < sizeX; offX++) {
+				for(int offZ = 0; offZ < sizeZ; offZ++) {
+					for(int offY = 0; offY < sizeY; offY++) {
+						long[] words = dense[(offX * sizeZ + offZ) * sizeY + offY];
+						if(words != null && !isEmpty(words)) {
+							action.accept(minSectionX + offX, minSectionY + offY, minSectionZ + offZ, words);
+						}
+					}
+				}
+			}
+		}
+		if(sparse != null) {
+			long[] keys = sparse.keySet().toLongArray();
+			sortByColumn(keys);
+			for(long key : keys) {
+				long[] words = sparse.get(key);
+				if(!isEmpty(words)) {
+					action.accept(SectionPos.x(key), SectionPos.y(key), SectionPos.z(key), words);
+				}
+			}
+		}
+	}
+
+	private static boolean isEmpty(long[] words) {
+		for(int word = 0; word < WORDS_PER_SECTION; word++) {
+			if(words[word] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sorts section keys by x, then z and then y, so that the sections of a chunk column follow each other.
+	 */
+	private static void sortByColumn(long[] keys) {
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = toColumnOrder(keys[i]);
+		}
+		Arrays.sort(keys);
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = fromColumnOrder(keys[i]);
+		}
+	}
+
+	private static long toColumnOrder(long key) {
+		long x = SectionPos.x(key) + (1L << 21);
+		long z = SectionPos.z(key) + (1L << 21);
+		long y = SectionPos.y(key) + (1L << 15);
+		return x << 38 | z << 16 | y;
+	}
+
+	private static long fromColumnOrder(long key) {
+		int x = (int)((key >>> 38) - (1L << 21));
+		int z = (int)((key >>> 16 & (1L << 22) - 1) - (1L << 21));
+		int y = (int)((key & (1L << 16) - 1) - (1L << 15));
+		return SectionPos.asLong(x, y, z);
+	}
+
+	@FunctionalInterface
+	private interface ISectionAction {
+
+		void accept(int sectionX, int sectionY, int sectionZ, long[] words);
+	}
+}
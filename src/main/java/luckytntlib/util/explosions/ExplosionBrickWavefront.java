@@ -0,0 +1,227 @@
+package luckytntlib.util.explosions;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import luckytntlib.util.explosions.ImprovedExplosion.IRayHit;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * An ExplosionBrickWavefront finds the blocks of an {@link ImprovedExplosion} with the {@link ExplosionEngine#HIERARCHICAL} engine.
+ * <p>
+ * A first pass spreads the energy of the explosion over bricks of 4x4x4 blocks, the same way an {@link ExplosionWavefront} spreads it over blocks.
+ * Every brick is summarized by the mean and the greatest explosion resistance of its blocks, and crossing a brick costs the mean.
+ * A brick that would still have energy left at its farthest block even if every block had the greatest loss is destroyed as a whole
+ * and passes its energy on to its neighbours. Every other brick that is reached is a boundary brick, where the first pass stops.
+ * <p>
+ * The second pass refines the boundary bricks block by block: the blocks of a boundary brick facing a destroyed brick
+ * join the wavefront with the energy left at the face of that brick, and the wavefront spreads from there without entering destroyed bricks again.
+ * The search through the inside of a crater thereby needs a 64th of the steps, at the cost of the energy being averaged over bricks,
+ * which slightly changes how far explosions reach through mixed terrain.
+ * <p>
+ * What is saved are the steps of the search, not the blocks: a destroyed brick still passes each of its blocks to the rayHit one by one,
+ * so the stages of the pipeline see every block. A brick made of a single state remembers that state from its summary,
+ * so its blocks are not read a second time when it is destroyed, and a brick of air only marks its blocks as visited.
+ */
+class ExplosionBrickWavefront extends ExplosionWavefront {
+
+	private static final int BRICKS_PER_CHECK = 64;
+	private static final long MISSING = -1L;
+
+	private final EnergyHeap bricks = new EnergyHeap();
+	/**
+	 * The greatest energy lost travelling from the center of a brick to one of its blocks, without explosion resistance
+	 */
+	private final float travelMargin;
+	private final float maxJitter;
+	private final BlockPos.MutableBlockPos brickPos = new BlockPos.MutableBlockPos();
+	@Nullable private Long2LongOpenHashMap summaries = new Long2LongOpenHashMap();
+	/**
+	 * The state of every summarized brick whose blocks within the build height all have the same state
+	 */
+	@Nullable private Long2ObjectOpenHashMap<BlockState> uniform = new Long2ObjectOpenHashMap<>();
+	@Nullable private Long2FloatOpenHashMap destroyed = new Long2FloatOpenHashMap();
+	@Nullable private LongOpenHashSet closed = new LongOpenHashSet();
+	@Nullable private LongArrayList boundary = new LongArrayList();
+	private boolean refining;
+
+	ExplosionBrickWavefront(ImprovedExplosion explosion, IExplosionBlockReader reader, BlockGetter blockGetter, float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean isStrongExplosion, long stream) {
+		super(explosion, reader, blockGetter, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, stream);
+		float maxTravel = 0;
+		for(int i = 0; i < 26; i++) {
+			maxTravel = Math.max(maxTravel, travelCost[i]);
+		}
+		maxJitter = 1f + 0.3f * Math.max(randomVecLength, 0);
+		travelMargin = 1.5f * maxTravel * maxJitter;
+		summaries.defaultReturnValue(MISSING);
+		destroyed.defaultReturnValue(Float.NaN);
+		if(center.getY() >= minY && center.getY() < maxY) {
+			bricks.push(BlockPos.asLong(center.getX() >> 2, center.getY() >> 2, center.getZ() >> 2), energy);
+		}
+	}
+
+	@Override
+	boolean run(IRayHit rayHit, long deadline) {
+		if(!refining) {
+			if(!spreadBricks(rayHit, deadline)) {
+				return false;
+			}
+			seedBoundary();
+			refining = true;
+		}
+		return super.run(rayHit, deadline);
+	}
+
+	/**
+	 * Runs the first pass over bricks until it has run out of energy or the deadline has passed.
+	 * @return whether or not the first pass is finished
+	 */
+	private boolean spreadBricks(IRayHit rayHit, long deadline) {
+		int visits = 0;
+		while(!bricks.isEmpty()) {
+			float energy = bricks.peekEnergy();
+			long key = bricks.peekKey();
+			bricks.pop();
+			if(!closed.add(key)) {
+				continue;
+			}
+			int brickX = BlockPos.getX(key), brickY = BlockPos.getY(key), brickZ = BlockPos.getZ(key);
+			long summary = getSummary(brickX, brickY, brickZ);
+			float least = energy - travelMargin - 2f * getMaxLoss(summary) * maxJitter;
+			if(least <= 0) {
+				boundary.add(key);
+				continue;
+			}
+			destroyBrick(brickX, brickY, brickZ, least, rayHit);
+			destroyed.put(key, energy);
+			float meanLoss = getMeanLoss(summary);
+			for(int i = 0; i < 26; i++) {
+				int nextX = brickX + OFFSET_X[i], nextY = brickY + OFFSET_Y[i], nextZ = brickZ + OFFSET_Z[i];
+				long nextKey = BlockPos.asLong(nextX, nextY, nextZ);
+				if((nextY << 2) + 4 <= minY || nextY << 2 >= maxY || closed.contains(nextKey)) {
+					continue;
+				}
+				float next = energy - 4f * travelCost[i] - 2f * LENGTH[i] * (meanLoss + getMeanLoss(getSummary(nextX, nextY, nextZ)));
+				if(next + travelMargin > 0) {
+					bricks.push(nextKey, next);
+				}
+			}
+			if(++visits % BRICKS_PER_CHECK == 0 && System.nanoTime() >= deadline) {
+				return bricks.isEmpty();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Passes all blocks of a brick to the rayHit that the given energy is enough to destroy and keeps the second pass from visiting them again.
+	 * The blocks of a brick of a single state are not read again, and those of a brick of air or of an empty area are only marked as visited.
+	 */
+	private void destroyBrick(int brickX, int brickY, int brickZ, float energy, IRayHit rayHit) {
+		int fromX = brickX << 2, fromY = Math.max(brickY << 2, minY), fromZ = brickZ << 2;
+		int toY = Math.min((brickY << 2) + 4, maxY);
+		BlockState state = uniform.get(BlockPos.asLong(brickX, brickY, brickZ));
+		boolean empty = state != null ? state.isAir() : reader.isInEmptyArea(fromX, fromY, fromZ) && reader.getEmptyMinY() <= fromY && reader.getEmptyMaxY() >= toY;
+		for(int x = fromX; x < fromX + 4; x++) {
+			for(int y = fromY; y < toY; y++) {
+				for(int z = fromZ; z < fromZ + 4; z++) {
+					visited.add(x, y, z);
+					if(!empty) {
+						hitBlock(brickPos.set(x, y, z), state != null ? state : reader.getBlockState(brickPos), energy, rayHit);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the blocks of every boundary brick that face a destroyed brick to the wavefront of the second pass, then drops the data of the first pass.
+	 */
+	private void seedBoundary() {
+		for(int index = 0; index < boundary.size(); index++) {
+			long key = boundary.getLong(index);
+			int brickX = BlockPos.getX(key), brickY = BlockPos.getY(key), brickZ = BlockPos.getZ(key);
+			for(int i = 0; i < 26; i++) {
+				if(LENGTH[i] != 1f) {
+					continue;
+				}
+				long nextKey = BlockPos.asLong(brickX + OFFSET_X[i], brickY + OFFSET_Y[i], brickZ + OFFSET_Z[i]);
+				float energy = destroyed.get(nextKey);
+				if(Float.isNaN(energy)) {
+					continue;
+				}
+				energy -= 2f * travelCost[i] + 2f * getMeanLoss(summaries.get(nextKey));
+				int fromX = OFFSET_X[i] > 0 ? 3 : 0, toX = OFFSET_X[i] < 0 ? 0 : 3;
+				int fromY = OFFSET_Y[i] > 0 ? 3 : 0, toY = OFFSET_Y[i] < 0 ? 0 : 3;
+				int fromZ = OFFSET_Z[i] > 0 ? 3 : 0, toZ = OFFSET_Z[i] < 0 ? 0 : 3;
+				for(int x = fromX; x <= toX; x++) {
+					for(int y = fromY; y <= toY; y++) {
+						for(int z = fromZ; z <= toZ; z++) {
+							seed((brickX << 2) + x, (brickY << 2) + y, (brickZ << 2) + z, energy);
+						}
+					}
+				}
+			}
+		}
+		bricks.trim();
+		summaries = null;
+		uniform = null;
+		destroyed = null;
+		closed = null;
+		boundary = null;
+	}
+
+	/**
+	 * Gets the summary of a brick, which is calculated the first time it is needed.
+	 * @return the mean and the greatest energy lost per block of way through one of the blocks of the brick, packed into a long
+	 */
+	private long getSummary(int brickX, int brickY, int brickZ) {
+		long key = BlockPos.asLong(brickX, brickY, brickZ);
+		long summary = summaries.get(key);
+		if(summary == MISSING) {
+			summary = summarize(brickX, brickY, brickZ);
+			summaries.put(key, summary);
+		}
+		return summary;
+	}
+
+	private long summarize(int brickX, int brickY, int brickZ) {
+		int fromX = brickX << 2, fromY = Math.max(brickY << 2, minY), fromZ = brickZ << 2;
+		int toY = Math.min((brickY << 2) + 4, maxY);
+		if(fromY >= toY || reader.isInEmptyArea(fromX, fromY, fromZ) && reader.getEmptyMinY() <= fromY && reader.getEmptyMaxY() >= toY) {
+			return 0L;
+		}
+		float sum = 0, max = 0;
+		BlockState first = reader.getBlockState(brickPos.set(fromX, fromY, fromZ));
+		boolean single = true;
+		for(int x = fromX; x < fromX + 4; x++) {
+			for(int y = fromY; y < toY; y++) {
+				for(int z = fromZ; z < fromZ + 4; z++) {
+					BlockState state = reader.getBlockState(brickPos.set(x, y, z));
+					float loss = getLoss(brickPos, state);
+					sum += loss;
+					max = Math.max(max, loss);
+					single &= state == first;
+				}
+			}
+		}
+		if(single) {
+			uniform.put(BlockPos.asLong(brickX, brickY, brickZ), first);
+		}
+		return (long)Float.floatToRawIntBits(sum / 64f) << 32 | Float.floatToRawIntBits(max) & 0xFFFFFFFFL;
+	}
+
+	private static float getMeanLoss(long summary) {
+		return Float.intBitsToFloat((int)(summary >>> 32));
+	}
+
+	private static float getMaxLoss(long summary) {
+		return Float.intBitsToFloat((int)summary);
+	}
+}
@@ -0,0 +1,164 @@
+package luckytntlib.util.explosions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import luckytntlib.config.LuckyTNTLibConfigValues;
+
+/**
+ * The ExplosionBufferPool hands out the buffers giant explosions keep their block positions in.
+ * <p>
+ * An explosion affecting millions of blocks needs arrays of hundreds of MB that only live for a few ticks,
+ * which the garbage collector has to allocate as humongous objects and clean up in expensive collections.
+ * From the number of blocks set in the config on, these arrays are replaced by direct buffers outside of the Java heap.
+ * Buffers are grouped by capacity, a power of two, and returned buffers are kept for the next giant explosion
+ * until the pool holds {@link ExplosionBufferPool#MAX_POOLED_BYTES}, after which they are left to the garbage collector.
+ * Smaller explosions keep using arrays on the heap, wrapped into buffers.
+ */
+final class ExplosionBufferPool {
+
+	/**
+	 * The greatest number of bytes that returned buffers may hold in total
+	 */
+	static final long MAX_POOLED_BYTES = 256L << 20;
+	@SuppressWarnings("unchecked")
+	private static final ArrayDeque<LongBuffer>[] POOL = new ArrayDeque[32];
+	private static long pooledBytes;
+
+	private ExplosionBufferPool() {
+	}
+
+	/**
+	 * @param capacity  the number of longs
+	 * @return whether or not a buffer of this capacity should be kept outside of the heap according to the config
+	 */
+	static boolean isOffHeap(int capacity) {
+		int threshold = LuckyTNTLibConfigValues.OFF_HEAP_EXPLOSION_THRESHOLD.get();
+		return threshold > 0 && capacity >= threshold;
+	}
+
+	/**
+	 * Gets a buffer that can hold at least the given number of longs.
+	 * The buffer is taken from the pool or allocated outside of the heap if the capacity reaches the threshold set in the config,
+	 * otherwise it wraps a new array. The contents of a pooled buffer are undefined.
+	 * @param capacity  the number of longs
+	 * @return the buffer
+	 */
+	static LongBuffer acquire(int capacity) {
+		if(!isOffHeap(capacity)) {
+			return LongBuffer.wrap(new long[capacity]);
+		}
+		int sizeClass = getSizeClass(capacity);
+		synchronized(POOL) {
+			ArrayDeque<LongBuffer> buffers = POOL[sizeClass];
+			if(buffers != null && !buffers.isEmpty()) {
+				LongBuffer buffer = buffers.pop();
+				pooledBytes -= (long)buffer.capacity() * Long.BYTES;
+				return buffer;
+			}
+		}
+		return ByteBuffer.allocateDirect((1 << sizeClass) * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+	}
+
+	/**
+	 * Returns a buffer to the pool. Buffers on the heap are ignored.
+	 * @param buffer  the buffer, which must not be used anymore afterwards
+	 */
+	static void release(LongBuffer buffer) {
+		if(!buffer.isDirect()) {
+			return;
+		}
+		long bytes = (long)buffer.capacity() * Long.BYTES;
+		synchronized(POOL) {
+			if(pooledBytes + bytes > MAX_POOLED_BYTES) {
+				return;
+			}
+			int sizeClass = Integer.numberOfTrailingZeros(buffer.capacity());
+			if(POOL[sizeClass] == null) {
+				POOL[sizeClass] = new ArrayDeque<>();
+			}
+			POOL[sizeClass].push(buffer.clear());
+			pooledBytes += bytes;
+		}
+	}
+
+	/**
+	 * Sorts the first longs of a buffer. Arrays are sorted directly, buffers outside of the heap by a natural merge sort,
+	 * which only needs a single pass over the longs if they consist of a few runs that are already sorted, as is the case for positions collected from an {@link ExplosionBlockSet}.
+	 * @param buffer  the buffer
+	 * @param size  the number of longs to sort
+	 */
+	static void sort(LongBuffer buffer, int size) {
+		if(buffer.hasArray()) {
+			Arrays.sort(buffer.array(), buffer.arrayOffset(), buffer.arrayOffset() + size);
+			return;
+		}
+		LongBuffer from = buffer, to = null;
+		while(true) {
+			int runs = 0;
+			for(int start = 0; start < size; runs++) {
+				int middle = getRunEnd(from, start, size);
+				if(middle == size) {
+					if(runs == 0) {
+						break;
+					}
+					if(to == null) {
+						to = acquire(size);
+					}
+					to.put(start, from, start, size - start);
+					start = size;
+					continue;
+				}
+				if(to == null) {
+					to = acquire(size);
+				}
+				int end = getRunEnd(from, middle, size);
+				merge(from, to, start, middle, end);
+				start = end;
+			}
+			if(runs == 0) {
+				break;
+			}
+			LongBuffer swap = from;
+			from = to;
+			to = swap;
+			if(runs == 1) {
+				break;
+			}
+		}
+		if(from != buffer) {
+			buffer.put(0, from, 0, size);
+			release(from);
+		}
+		else if(to != null) {
+			release(to);
+		}
+	}
+
+	private static int getRunEnd(LongBuffer buffer, int start, int size) {
+		int end = start + 1;
+		while(end < size && buffer.get(end - 1) <= buffer.get(end)) {
+			end++;
+		}
+		return end;
+	}
+
+	private static void merge(LongBuffer from, LongBuffer to, int start, int middle, int end) {
+		int i = start, j = middle;
+		for(int index = start; index < end; index++) {
+			if(j >= end || (i < middle && from.get(i) <= from.get(j))) {
+				to.put(index, from.get(i++));
+			}
+			else {
+				to.put(index, from.get(j++));
+			}
+		}
+	}
+
+	private static int getSizeClass(int capacity) {
+		return Math.max(32 - Integer.numberOfLeadingZeros(capacity - 1), 12);
+	}
+}
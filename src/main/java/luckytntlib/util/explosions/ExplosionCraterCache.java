@@ -0,0 +1,365 @@
+package luckytntlib.util.explosions;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import luckytntlib.config.LuckyTNTLibConfigValues;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+
+/**
+ * The ExplosionCraterCache remembers the blocks found by recent explosions, so that an identical explosion on identical terrain can skip finding them again.
+ * <p>
+ * A crater is keyed by everything its blocks depend on: the pipeline and plan it was found with, the size of the explosion,
+ * the seed of the level, the type of the exploding entity, the position of the center within its section, rounded to a quarter of a block,
+ * and the summaries of all sections within the reach of the explosion. A summary is a hash of the states of a section, sections of a single state are summarized from their palette alone.
+ * Summaries are kept per level and section until a block in their section changes, which is noticed through the neighbour notifications of the level
+ * and the writes of a {@link BlockWriteBuffer}, or until the chunk of the section is unloaded, so only sections that changed since the last explosion have to be read again.
+ * Summaries only hold plain numbers and no reference to their section, so they never keep an unloaded chunk in memory.
+ * The blocks are kept as offsets from the center block and replayed around the center of the next explosion with the same key.
+ * <p>
+ * Keys compare all summaries and not only their combined hash, and a hit is only replayed if all of its blocks still have the state they had when it was cached,
+ * which catches sections changed without notifying their neighbours, such as by block updates without neighbour notifications, structures or fill commands. Otherwise the crater is dropped and the blocks are found again.
+ * A hit replays the crater of the first explosion with that key, so the randomness of the vector lengths no longer varies between explosions on the same layout.
+ * Only explosions in a {@link ServerLevel} whose pipeline has neither a condition stage nor streaming mode are cached.
+ * The cache is limited to the number of positions set in the config, evicting the least recently used craters first,
+ * and is cleared whenever the config, tags or registries change.
+ */
+public final class ExplosionCraterCache {
+
+	private static final int MAX_SUMMARIES = 65536;
+	private static final Map<Key, Crater> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+	private static final Map<Level, Long2ObjectOpenHashMap<SectionSummary>> SUMMARIES = new WeakHashMap<>();
+	/**
+	 * Whether or not any section has been summarized since the cache was last cleared, so that block changes can skip the lock while the cache is disabled
+	 */
+	private static volatile boolean summarized;
+	private static long positions;
+	private static long hits, misses, evictions;
+
+	private ExplosionCraterCache() {
+	}
+
+	/**
+	 * Gets the key of the crater of an explosion, hashing the terrain within its reach.
+	 * @param explosion  the ImprovedExplosion
+	 * @param pipeline  the ExplosionPipeline the blocks are found with
+	 * @param plan  the ExplosionPlan of the pipeline or null if the pipeline does not use one
+	 * @param reach  the greatest distance from the center a block of the explosion can have
+	 * @return the key or null if the cache is disabled or the explosion cannot be cached
+	 */
+	@Nullable
+	static Key getKey(ImprovedExplosion explosion, ExplosionPipeline pipeline, @Nullable ExplosionPlan plan, double reach) {
+		if(LuckyTNTLibConfigValues.CRATER_CACHE_CAPACITY.get() <= 0 || pipeline.condition != null || pipeline.streaming || !(explosion.level instanceof ServerLevel serverLevel)) {
+			return null;
+		}
+		BlockPos center = BlockPos.containing(explosion.posX, explosion.posY, explosion.posZ);
+		Entity source = explosion.getDirectSourceEntity();
+		return new Key(serverLevel.getSeed(), source == null ? null : source.getType(), pipeline.engine, plan, pipeline.xzStrength, pipeline.yStrength, pipeline.resistanceImpact, pipeline.randomVecLength, pipeline.isStrongExplosion,
+				explosion.size, LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get(), quarter(explosion.posX), quarter(explosion.posY), quarter(explosion.posZ),
+				center.getX() & 15, center.getY(), center.getZ() & 15, summarizeTerrain(serverLevel, explosion.cursor, center, reach));
+	}
+
+	/**
+	 * Adds the blocks of a cached crater to the given set, if all of them still have the state they had when the crater was cached.
+	 * @param key  the key of the crater
+	 * @param cursor  the cursor to read the blocks of the level with
+	 * @param center  the center block of the explosion
+	 * @param blocks  the set to add the blocks to
+	 * @return whether or not the crater was cached and replayed
+	 */
+	static boolean replay(Key key, ChunkSectionCursor cursor, BlockPos center, ExplosionBlockSet blocks) {
+		Crater crater;
+		synchronized(CACHE) {
+			crater = CACHE.get(key);
+		}
+		if(crater != null) {
+			for(int i = 0; i < crater.offsets.length; i++) {
+				long offset = crater.offsets[i];
+				if(Block.getId(cursor.getBlockState(center.getX() + BlockPos.getX(offset), center.getY() + BlockPos.getY(offset), center.getZ() + BlockPos.getZ(offset))) != crater.states[i]) {
+					synchronized(CACHE) {
+						if(CACHE.remove(key, crater)) {
+							positions -= crater.offsets.length;
+						}
+					}
+					crater = null;
+					break;
+				}
+			}
+		}
+		synchronized(CACHE) {
+			if(crater == null) {
+				misses++;
+				return false;
+			}
+			hits++;
+		}
+		for(long offset : crater.offsets) {
+			blocks.add(center.getX() + BlockPos.getX(offset), center.getY() + BlockPos.getY(offset), center.getZ() + BlockPos.getZ(offset));
+		}
+		return true;
+	}
+
+	/**
+	 * Caches the blocks found by an explosion together with their current states, evicting the least recently used craters until the cache fits into its capacity.
+	 * Craters larger than the whole capacity are not cached.
+	 * @param key  the key of the crater
+	 * @param cursor  the cursor to read the states of the blocks with
+	 * @param center  the center block of the explosion
+	 * @param blocks  the blocks found by the explosion
+	 */
+	static void put(Key key, ChunkSectionCursor cursor, BlockPos center, ExplosionBlockSet blocks) {
+		int capacity = LuckyTNTLibConfigValues.CRATER_CACHE_CAPACITY.get();
+		if(blocks.size() > capacity) {
+			return;
+		}
+		long[] offsets = blocks.toLongArray();
+		int[] states = new int[offsets.length];
+		for(int i = 0; i < offsets.length; i++) {
+			states[i] = Block.getId(cursor.getBlockState(BlockPos.getX(offsets[i]), BlockPos.getY(offsets[i]), BlockPos.getZ(offsets[i])));
+			offsets[i] = BlockPos.asLong(BlockPos.getX(offsets[i]) - center.getX(), BlockPos.getY(offsets[i]) - center.getY(), BlockPos.getZ(offsets[i]) - center.getZ());
+		}
+		Crater crater = new Crater(offsets, states);
+		synchronized(CACHE) {
+			Crater previous = CACHE.put(key, crater);
+			positions += offsets.length - (previous == null ? 0 : previous.offsets.length);
+			Iterator<Crater> iterator = CACHE.values().iterator();
+			while(positions > capacity && iterator.hasNext()) {
+				positions -= iterator.next().offsets.length;
+				iterator.remove();
+				evictions++;
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached craters and section summaries. Called whenever the config is (re)loaded or tags and registries change, as the blocks an explosion destroys may have changed.
+	 */
+	public static void clearCache() {
+		synchronized(CACHE) {
+			CACHE.clear();
+			positions = 0;
+		}
+		synchronized(SUMMARIES) {
+			SUMMARIES.clear();
+			summarized = false;
+		}
+	}
+
+	/**
+	 * Forgets the summary of the section holding the given block. Called whenever a block changes.
+	 * @param level  the level of the block
+	 * @param pos  the position of the block
+	 */
+	public static void invalidate(Level level, BlockPos pos) {
+		invalidate(level, SectionPos.asLong(pos));
+	}
+
+	/**
+	 * Forgets the summary of the given section.
+	 * @param level  the level of the section
+	 * @param sectionPos  the position of the section in the form of {@link SectionPos#asLong()}
+	 */
+	public static void invalidate(Level level, long sectionPos) {
+		if(!summarized) {
+			return;
+		}
+		synchronized(SUMMARIES) {
+			Long2ObjectOpenHashMap<SectionSummary> summaries = SUMMARIES.get(level);
+			if(summaries != null) {
+				summaries.remove(sectionPos);
+			}
+		}
+	}
+
+	/**
+	 * Forgets the summaries of all sections of the given chunk. Called whenever a chunk is unloaded.
+	 * @param level  the level of the chunk
+	 * @param chunk  the position of the chunk
+	 * @param minSection  the lowest section of the chunk
+	 * @param maxSection  the highest section of the chunk, exclusive
+	 */
+	public static void invalidateChunk(Level level, ChunkPos chunk, int minSection, int maxSection) {
+		if(!summarized) {
+			return;
+		}
+		synchronized(SUMMARIES) {
+			Long2ObjectOpenHashMap<SectionSummary> summaries = SUMMARIES.get(level);
+			if(summaries != null && !summaries.isEmpty()) {
+				for(int y = minSection; y < maxSection; y++) {
+					summaries.remove(SectionPos.asLong(chunk.x, y, chunk.z));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets the summaries of all sections of the given level. Called whenever a level is unloaded.
+	 * @param level  the level
+	 */
+	public static void clearLevel(Level level) {
+		synchronized(SUMMARIES) {
+			SUMMARIES.remove(level);
+		}
+	}
+
+	/**
+	 * @return the number of explosions whose blocks were replayed from the cache
+	 */
+	public static long getHits() {
+		synchronized(CACHE) {
+			return hits;
+		}
+	}
+
+	/**
+	 * @return the number of cacheable explosions whose blocks had to be found
+	 */
+	public static long getMisses() {
+		synchronized(CACHE) {
+			return misses;
+		}
+	}
+
+	/**
+	 * @return the number of craters removed to stay within the capacity
+	 */
+	public static long getEvictions() {
+		synchronized(CACHE) {
+			return evictions;
+		}
+	}
+
+	/**
+	 * @return the number of cached craters
+	 */
+	public static int getSize() {
+		synchronized(CACHE) {
+			return CACHE.size();
+		}
+	}
+
+	/**
+	 * @return the number of block positions held by all cached craters, each taking 12 bytes together with its state
+	 */
+	public static long getPositions() {
+		synchronized(CACHE) {
+			return positions;
+		}
+	}
+
+	private static int quarter(double coordinate) {
+		return (int)Math.round((coordinate - Math.floor(coordinate)) * 4);
+	}
+
+	/**
+	 * Summarizes all sections that the cube around the center touches, in an order relative to the section of the center.
+	 */
+	private static Terrain summarizeTerrain(Level level, ChunkSectionCursor cursor, BlockPos center, double reach) {
+		int r = (int)Math.ceil(reach);
+		int minX = SectionPos.blockToSectionCoord(center.getX() - r), maxX = SectionPos.blockToSectionCoord(center.getX() + r);
+		int minY = SectionPos.blockToSectionCoord(center.getY() - r), maxY = SectionPos.blockToSectionCoord(center.getY() + r);
+		int minZ = SectionPos.blockToSectionCoord(center.getZ() - r), maxZ = SectionPos.blockToSectionCoord(center.getZ() + r);
+		long[] sections = new long[(maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1)];
+		long hash = 0;
+		int index = 0;
+		synchronized(SUMMARIES) {
+			summarized = true;
+			Long2ObjectOpenHashMap<SectionSummary> summaries = SUMMARIES.computeIfAbsent(level, l -> new Long2ObjectOpenHashMap<>());
+			if(summaries.size() > MAX_SUMMARIES) {
+				summaries.clear();
+			}
+			for(int x = minX; x <= maxX; x++) {
+				for(int z = minZ; z <= maxZ; z++) {
+					for(int y = minY; y <= maxY; y++) {
+						long summary = getSummary(summaries, cursor, x, y, z);
+						sections[index++] = summary;
+						hash = (hash + summary) * 0x9e3779b97f4a7c15L;
+						hash ^= hash >>> 29;
+					}
+				}
+			}
+		}
+		return new Terrain(hash, sections);
+	}
+
+	/**
+	 * Gets the cached summary of a section or summarizes it again if it has changed or has been loaded anew since.
+	 * A section loaded anew is told apart by the identity of its states, in case its chunk was reloaded without an unload event in between.
+	 */
+	private static long getSummary(Long2ObjectOpenHashMap<SectionSummary> summaries, ChunkSectionCursor cursor, int x, int y, int z) {
+		LevelChunkSection section = cursor.getSection(x << 4, y << 4, z << 4);
+		if(section == null) {
+			return 0;
+		}
+		long sectionPos = SectionPos.asLong(x, y, z);
+		SectionSummary summary = summaries.get(sectionPos);
+		int identity = System.identityHashCode(section.getStates());
+		if(summary == null || summary.identity != identity) {
+			summary = new SectionSummary(identity, summarizeSection(section));
+			summaries.put(sectionPos, summary);
+		}
+		return summary.summary;
+	}
+
+	private static long summarizeSection(LevelChunkSection section) {
+		if(section.hasOnlyAir()) {
+			return 1;
+		}
+		PalettedContainer<BlockState> states = section.getStates();
+		BlockState first = states.get(0, 0, 0);
+		if(!states.maybeHas(state -> state != first)) {
+			return (Block.getId(first) + 2L) * 0x9e3779b97f4a7c15L;
+		}
+		long[] hash = {0xcbf29ce484222325L};
+		states.getAll(state -> hash[0] = (hash[0] ^ Block.getId(state)) * 0x100000001b3L);
+		return hash[0];
+	}
+
+	/**
+	 * The summary of a section together with the identity hash of the states it was made of.
+	 */
+	private static record SectionSummary(int identity, long summary) {
+	}
+
+	/**
+	 * The blocks of a cached crater as offsets from the center block and the ids of their states when the crater was cached.
+	 */
+	private static record Crater(long[] offsets, int[] states) {
+	}
+
+	/**
+	 * The summaries of all sections within the reach of an explosion, which are all compared when looking up a crater.
+	 */
+	record Terrain(long hash, long[] sections) {
+
+		@Override
+		public boolean equals(Object object) {
+			return object instanceof Terrain terrain && hash == terrain.hash && Arrays.equals(sections, terrain.sections);
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(hash);
+		}
+	}
+
+	record Key(long seed, @Nullable EntityType<?> source, ExplosionEngine engine, @Nullable ExplosionPlan plan, float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean isStrongExplosion,
+			int size, double performanceFactor, int quarterX, int quarterY, int quarterZ, int localX, int y, int localZ, Terrain terrain) {
+	}
+}
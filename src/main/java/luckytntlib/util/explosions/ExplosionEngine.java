@@ -0,0 +1,27 @@
+package luckytntlib.util.explosions;
+
+/**
+ * The ways an {@link ImprovedExplosion} can find the blocks it affects, which is the first stage of an {@link ExplosionPipeline}.
+ */
+public enum ExplosionEngine {
+	/**
+	 * Shoots the explosion vectors of an {@link ExplosionPlan} from the center of the explosion.
+	 * Every vector loses length with every step and every resistant block it passes until it runs out.
+	 */
+	RAYS,
+	/**
+	 * Spreads the energy of the explosion outward from its center like a wave, always continuing at the block with the most energy left.
+	 * Every block is visited at most once, so the work only grows with the volume of the crater instead of with the number of vectors,
+	 * and resistant blocks naturally shadow the blocks behind them while the energy still flows around their edges.
+	 * Craters are rounder than with {@link ExplosionEngine#RAYS}, as the randomness of the vector lengths only slightly roughens their edges.
+	 * Blocks are always found on the thread of the level.
+	 */
+	WAVEFRONT,
+	/**
+	 * Works like {@link ExplosionEngine#WAVEFRONT}, but first spreads the energy over bricks of 4x4x4 blocks
+	 * and destroys every brick that would be destroyed as a whole without searching through its blocks one by one.
+	 * Only the bricks at the edge of the crater are then refined block by block, which makes the inside of giant craters up to 64 times cheaper.
+	 * As the energy is averaged over bricks, the crater may reach slightly farther or shorter through mixed terrain than with {@link ExplosionEngine#WAVEFRONT}.
+	 */
+	HIERARCHICAL
+}
@@ -2,14 +2,18 @@ package luckytntlib.util.explosions;
 
 import java.util.HashMap;
 
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+import luckytntlib.config.LuckyTNTLibConfigValues;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
+import net.minecraft.core.SectionPos;
 import net.minecraft.tags.BlockTags;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.Items;
 import net.minecraft.world.item.context.DirectionalPlaceContext;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunkSection;
 import net.minecraft.world.phys.Vec3;
 
 /**
@@ -28,6 +32,7 @@ public class ExplosionHelper {
 	 * @return a {@link HashMap} of {@link BlockPos} and {@link BlockState}
 	 */
 	public static HashMap<BlockPos, BlockState> getBlocksInSphere(Level level, Vec3 position, int radius) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		HashMap<BlockPos, BlockState> blocks = new HashMap<>();
 		for(int offX = -radius; offX <= radius; offX++) {
 			for(int offY = radius; offY >= -radius; offY--) {
@@ -35,7 +40,7 @@ public class ExplosionHelper {
 					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
 					if(distance <= radius) {
 						BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset(offX, offY, offZ);
-						BlockState state = level.getBlockState(pos);
+						BlockState state = cursor.getBlockState(pos);
 						blocks.put(pos, state);
 					}
 				}
@@ -52,12 +57,13 @@ public class ExplosionHelper {
 	 * @return a {@link HashMap} of {@link BlockPos} and {@link BlockState}
 	 */
 	public static HashMap<BlockPos, BlockState> getBlocksInCuboid(Level level, Vec3 position, Vec3 radii) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		HashMap<BlockPos, BlockState> blocks = new HashMap<>();
 		for(int offX = (int)-radii.x; offX <= (int)radii.x; offX++) {
 			for(int offY = (int)radii.y; offY >= (int)-radii.y; offY--) {
 				for(int offZ = (int)-radii.z; offZ <= (int)radii.z; offZ++) {
 					BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset(offX, offY, offZ);
-					BlockState state = level.getBlockState(pos);
+					BlockState state = cursor.getBlockState(pos);
 					blocks.put(pos, state);
 				}
 			}
@@ -73,6 +79,7 @@ public class ExplosionHelper {
 	 * @return a {@link HashMap} of {@link BlockPos} and {@link BlockState}
 	 */
 	public static HashMap<BlockPos, BlockState> getBlocksInCylinder(Level level, Vec3 position, int radius, int radiusY) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		HashMap<BlockPos, BlockState> blocks = new HashMap<>();
 		for(int offX = -radius; offX <= radius; offX++) {
 			for(int offY = radiusY; offY >= -radiusY; offY--) {
@@ -80,7 +87,7 @@ public class ExplosionHelper {
 					double distance = Math.sqrt(offX * offX + offZ * offZ);
 					if(distance <= radius) {
 						BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset(offX, offY, offZ);
-						BlockState state = level.getBlockState(pos);
+						BlockState state = cursor.getBlockState(pos);
 						blocks.put(pos, state);
 					}
 				}
@@ -97,13 +104,14 @@ public class ExplosionHelper {
 	 * @param blockEffect  determines what should happen to the blocks gotten by this function
 	 */
 	public static void doSphericalExplosion(Level level, Vec3 position, int radius, IForEachBlockExplosionEffect blockEffect) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		for(int offX = -radius; offX <= radius; offX++) {
 			for(int offY = radius; offY >= -radius; offY--) {
 				for(int offZ = -radius; offZ <= radius; offZ++) {
 					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
 					if(distance <= radius) {
 						BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset(offX, offY, offZ);
-						BlockState state = level.getBlockState(pos);
+						BlockState state = cursor.getBlockState(pos);
 						blockEffect.doBlockExplosion(level, pos, state, distance);
 					}
 				}
@@ -121,13 +129,14 @@ public class ExplosionHelper {
 	 * @param blockEffect  determines what should happen to the blocks gotten by this function
 	 */
 	public static void doModifiedSphericalExplosion(Level level, Vec3 position, int radius, Vec3 scaling, IForEachBlockExplosionEffect blockEffect) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		for(double offX = -radius * scaling.x; offX <= radius * scaling.x; offX++) {
 			for(double offY = radius * scaling.y; offY >= -radius * scaling.y; offY--) {
 				for(double offZ = -radius * scaling.z; offZ <= radius * scaling.z; offZ++) {
 					double distance = Math.sqrt(offX * offX / scaling.x + offY * offY / scaling.y + offZ * offZ / scaling.z);
 					if(distance <= radius) {
 						BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset((int)offX, (int)offY, (int)offZ);
-						BlockState state = level.getBlockState(pos);
+						BlockState state = cursor.getBlockState(pos);
 						blockEffect.doBlockExplosion(level, pos, state, distance);
 					}
 				}
@@ -143,12 +152,13 @@ public class ExplosionHelper {
 	 * @param blockEffect  determines what should happen to the blocks gotten by this function
 	 */
 	public static void doCubicalExplosion(Level level, Vec3 position, int radius, IForEachBlockExplosionEffect blockEffect) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		for(int offX = -radius; offX <= radius; offX++) {
 			for(int offY = -radius; offY <= radius; offY++) {
 				for(int offZ = -radius; offZ <= radius; offZ++) {
 					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
 					BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset(offX, offY, offZ);
-					BlockState state = level.getBlockState(pos);
+					BlockState state = cursor.getBlockState(pos);
 					blockEffect.doBlockExplosion(level, pos, state, distance);
 				}
 			}
@@ -163,12 +173,13 @@ public class ExplosionHelper {
 	 * @param blockEffect  determines what should happen to the blocks gotten by this function
 	 */
 	public static void doCuboidExplosion(Level level, Vec3 position, Vec3 radii, IForEachBlockExplosionEffect blockEffect) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		for(int offX = (int)-radii.x; offX <= (int)radii.x; offX++) {
 			for(int offY = (int)-radii.y; offY <= (int)radii.y; offY++) {
 				for(int offZ = (int)-radii.z; offZ <= (int)radii.z; offZ++) {
 					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
 					BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset(offX, offY, offZ);
-					BlockState state = level.getBlockState(pos);
+					BlockState state = cursor.getBlockState(pos);
 					blockEffect.doBlockExplosion(level, pos, state, distance);
 				}
 			}
@@ -184,13 +195,14 @@ public class ExplosionHelper {
 	 * @param blockEffect  determines what should happen to the blocks gotten by this function
 	 */
 	public static void doCylindricalExplosion(Level level, Vec3 position, int radius, int radiusY, IForEachBlockExplosionEffect blockEffect) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		for(int offX = -radius; offX <= radius; offX++) {
 			for(int offY = -radiusY; offY <= radiusY; offY++) {
 				for(int offZ = -radius; offZ <= radius; offZ++) {
 					double distance = Math.sqrt(offX * offX + offZ * offZ);
 					if(distance <= radius) {
 						BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset(offX, offY, offZ);
-						BlockState state = level.getBlockState(pos);
+						BlockState state = cursor.getBlockState(pos);
 						blockEffect.doBlockExplosion(level, pos, state, distance);
 					}
 				}
@@ -198,6 +210,43 @@ public class ExplosionHelper {
 		}
 	}
 	
+	/**
+	 * Transforms blocks contained in a specified sphere around a center position according to the given {@link BlockTransform}.
+	 * Sections of the sphere are transformed at once where possible.
+	 * @param level  the current level
+	 * @param position  the center position of the spherical explosion
+	 * @param radius  the radius of the sphere
+	 * @param transform  determines what the blocks in the sphere are transformed to
+	 */
+	public static void doSphericalExplosion(Level level, Vec3 position, int radius, BlockTransform transform) {
+		doTransform(level, position, radius, radius, radius, radius, (x, y, z) -> Math.sqrt(x * x + y * y + z * z), transform);
+	}
+	
+	/**
+	 * Transforms blocks contained in a specified cuboid around a center position according to the given {@link BlockTransform}.
+	 * Sections of the cuboid are transformed at once where possible.
+	 * @param level  the current level
+	 * @param position  the center position of the cubical explosion
+	 * @param radii  the radii for the x, y and z directions
+	 * @param transform  determines what the blocks in the cuboid are transformed to
+	 */
+	public static void doCuboidExplosion(Level level, Vec3 position, Vec3 radii, BlockTransform transform) {
+		doTransform(level, position, (int)radii.x, (int)radii.y, (int)radii.z, Double.POSITIVE_INFINITY, (x, y, z) -> Math.sqrt(x * x + y * y + z * z), transform);
+	}
+	
+	/**
+	 * Transforms blocks contained in a specified cylinder around a center position according to the given {@link BlockTransform}.
+	 * Sections of the cylinder are transformed at once where possible.
+	 * @param level  the current level
+	 * @param position  the center position of the cubical explosion
+	 * @param radius  the radius of the x and z dimensions of the cylinder
+	 * @param radiusY  the radius of the y dimension of the cylinder
+	 * @param transform  determines what the blocks in the cylinder are transformed to
+	 */
+	public static void doCylindricalExplosion(Level level, Vec3 position, int radius, int radiusY, BlockTransform transform) {
+		doTransform(level, position, radius, radiusY, radius, radius, (x, y, z) -> Math.sqrt(x * x + z * z), transform);
+	}
+	
 	/**
 	 * Gets only the top most blocks in a sphere and edits them according to the given blockEffect.
 	 * The function goes from top to bottom and the first block that is air or not solid and followed by a solid block below is considered the top most block.
@@ -207,14 +256,15 @@ public class ExplosionHelper {
 	 * @param blockEffect  determines what should happen to the blocks gotten by this function
 	 */
 	public static void doTopBlockExplosion(Level level, Vec3 position, int radius, IForEachBlockExplosionEffect blockEffect) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		for(int offX = -radius; offX <= radius; offX++) {
 			for(int offZ = -radius; offZ <= radius; offZ++) {
 				topToBottom: for(int offY = radius; offY >= -radius; offY--) {
 					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
 					if(distance <= radius) {
 						BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset(offX, offY, offZ);
-						BlockState state = level.getBlockState(pos);
-						if((level.getBlockState(pos.below()).isCollisionShapeFullBlock(level, pos.below()) || level.getBlockState(pos.below()).isFaceSturdy(level, pos.below(), Direction.UP)) && (state.isAir() || state.canBeReplaced(new DirectionalPlaceContext(level, pos, Direction.DOWN, new ItemStack(Items.CARROT), Direction.UP))  || (!state.isCollisionShapeFullBlock(level, pos) && state.getExplosionResistance(level, pos, ImprovedExplosion.dummyExplosion(level)) == 0) || state.is(BlockTags.FLOWERS))) {
+						BlockState state = cursor.getBlockState(pos);
+						if((cursor.getBlockState(pos.below()).isCollisionShapeFullBlock(level, pos.below()) || cursor.getBlockState(pos.below()).isFaceSturdy(level, pos.below(), Direction.UP)) && (state.isAir() || state.canBeReplaced(new DirectionalPlaceContext(level, pos, Direction.DOWN, new ItemStack(Items.CARROT), Direction.UP))  || (!state.isCollisionShapeFullBlock(level, pos) && state.getExplosionResistance(level, pos, ImprovedExplosion.dummyExplosion(level)) == 0) || state.is(BlockTags.FLOWERS))) {
 							blockEffect.doBlockExplosion(level, pos, state, distance);
 							break topToBottom;
 						}
@@ -235,15 +285,16 @@ public class ExplosionHelper {
 	 * @param blockEffect  determines what should happen to the blocks gotten by this function
 	 */
 	public static void doTopBlockExplosion(Level level, Vec3 position, int radius, IBlockExplosionCondition condition, IForEachBlockExplosionEffect blockEffect) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		for(int offX = -radius; offX <= radius; offX++) {
 			for(int offZ = -radius; offZ <= radius; offZ++) {
 				topToBottom: for(int offY = radius; offY >= -radius; offY--) {
 					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
 					if(distance <= radius) {
 						BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset(offX, offY, offZ);
-						BlockState state = level.getBlockState(pos);
-						if(!level.getBlockState(pos.below()).isAir()) {
-							if(condition.conditionMet(level, pos.below(), level.getBlockState(pos.below()), Math.sqrt(offX * offX + (offY-1) * (offY-1) + offZ * offZ))) {
+						BlockState state = cursor.getBlockState(pos);
+						if(!cursor.getBlockState(pos.below()).isAir()) {
+							if(condition.conditionMet(level, pos.below(), cursor.getBlockState(pos.below()), Math.sqrt(offX * offX + (offY-1) * (offY-1) + offZ * offZ))) {
 								blockEffect.doBlockExplosion(level, pos, state, distance);
 								break topToBottom;
 							}
@@ -263,14 +314,15 @@ public class ExplosionHelper {
 	 * @param blockEffect  determines what should happen to the blocks gotten by this function
 	 */
 	public static void doTopBlockExplosionForAll(Level level, Vec3 position, int radius, IForEachBlockExplosionEffect blockEffect) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
 		for(int offX = -radius; offX <= radius; offX++) {
 			for(int offZ = -radius; offZ <= radius; offZ++) {
 				for(int offY = radius; offY >= -radius; offY--) {
 					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
 					if(distance <= radius) {
 						BlockPos pos = new BlockPos((int)position.x, (int)position.y, (int)position.z).offset(offX, offY, offZ);
-						BlockState state = level.getBlockState(pos);
-						if((level.getBlockState(pos.below()).isCollisionShapeFullBlock(level, pos.below()) || level.getBlockState(pos.below()).isFaceSturdy(level, pos.below(), Direction.UP)) && (state.isAir() || state.canBeReplaced(new DirectionalPlaceContext(level, pos, Direction.DOWN, new ItemStack(Items.CARROT), Direction.UP)) || (!state.isCollisionShapeFullBlock(level, pos) && state.getExplosionResistance(level, pos, ImprovedExplosion.dummyExplosion(level)) == 0) || state.is(BlockTags.FLOWERS))) {
+						BlockState state = cursor.getBlockState(pos);
+						if((cursor.getBlockState(pos.below()).isCollisionShapeFullBlock(level, pos.below()) || cursor.getBlockState(pos.below()).isFaceSturdy(level, pos.below(), Direction.UP)) && (state.isAir() || state.canBeReplaced(new DirectionalPlaceContext(level, pos, Direction.DOWN, new ItemStack(Items.CARROT), Direction.UP)) || (!state.isCollisionShapeFullBlock(level, pos) && state.getExplosionResistance(level, pos, ImprovedExplosion.dummyExplosion(level)) == 0) || state.is(BlockTags.FLOWERS))) {
 							blockEffect.doBlockExplosion(level, pos, state, distance);
 						}
 					}
@@ -278,4 +330,77 @@ public class ExplosionHelper {
 			}
 		}
 	}
+	
+	/**
+	 * Transforms the blocks of a shape section by section. The shape consists of all blocks within the given radii of the center
+	 * whose distance to the center is not greater than the radius of the shape. The distance must only grow with the absolute value of each offset.
+	 */
+	private static void doTransform(Level level, Vec3 position, int radiusX, int radiusY, int radiusZ, double radius, IShapeDistance shape, BlockTransform transform) {
+		ChunkSectionCursor cursor = new ChunkSectionCursor(level);
+		BlockWriteBuffer buffer = new BlockWriteBuffer(level, LuckyTNTLibConfigValues.DEFERRED_EXPLOSION_LIGHTING.get());
+		Reference2ReferenceOpenHashMap<BlockState, BlockState> mapped = new Reference2ReferenceOpenHashMap<>();
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		BlockPos center = new BlockPos((int)position.x, (int)position.y, (int)position.z);
+		double minDistance = transform.minDistance, maxDistance = Math.min(radius, transform.maxDistance);
+		int minX = center.getX() - radiusX, maxX = center.getX() + radiusX;
+		int minY = Math.max(center.getY() - radiusY, level.getMinBuildHeight()), maxY = Math.min(center.getY() + radiusY, level.getMaxBuildHeight() - 1);
+		int minZ = center.getZ() - radiusZ, maxZ = center.getZ() + radiusZ;
+		for(int sectionX = SectionPos.blockToSectionCoord(minX); sectionX <= SectionPos.blockToSectionCoord(maxX); sectionX++) {
+			for(int sectionZ = SectionPos.blockToSectionCoord(minZ); sectionZ <= SectionPos.blockToSectionCoord(maxZ); sectionZ++) {
+				for(int sectionY = SectionPos.blockToSectionCoord(minY); sectionY <= SectionPos.blockToSectionCoord(maxY); sectionY++) {
+					int x0 = Math.max(minX, sectionX << 4), x1 = Math.min(maxX, (sectionX << 4) + 15);
+					int y0 = Math.max(minY, sectionY << 4), y1 = Math.min(maxY, (sectionY << 4) + 15);
+					int z0 = Math.max(minZ, sectionZ << 4), z1 = Math.min(maxZ, (sectionZ << 4) + 15);
+					LevelChunkSection section = cursor.getSection(x0, y0, z0);
+					if(section == null || !section.getStates().maybeHas(state -> mapped.computeIfAbsent(state, transform::apply) != state)) {
+						continue;
+					}
+					int dx0 = x0 - center.getX(), dx1 = x1 - center.getX();
+					int dy0 = y0 - center.getY(), dy1 = y1 - center.getY();
+					int dz0 = z0 - center.getZ(), dz1 = z1 - center.getZ();
+					boolean covered = shape.getDistance(getFarthest(dx0, dx1), getFarthest(dy0, dy1), getFarthest(dz0, dz1)) <= maxDistance
+							&& shape.getDistance(getNearest(dx0, dx1), getNearest(dy0, dy1), getNearest(dz0, dz1)) >= minDistance;
+					if(covered && x1 - x0 == 15 && y1 - y0 == 15 && z1 - z0 == 15) {
+						BlockState first = mapped.computeIfAbsent(section.getBlockState(0, 0, 0), transform::apply);
+						if(!section.getStates().maybeHas(state -> mapped.computeIfAbsent(state, transform::apply) != first)) {
+							buffer.fillSection(sectionX, sectionY, sectionZ, first);
+							continue;
+						}
+					}
+					for(int y = y0; y <= y1; y++) {
+						for(int z = z0; z <= z1; z++) {
+							for(int x = x0; x <= x1; x++) {
+								if(!covered) {
+									double distance = shape.getDistance(x - center.getX(), y - center.getY(), z - center.getZ());
+									if(distance < minDistance || distance > maxDistance) {
+										continue;
+									}
+								}
+								BlockState state = section.getBlockState(x & 15, y & 15, z & 15);
+								BlockState newState = mapped.computeIfAbsent(state, transform::apply);
+								if(newState != state) {
+									buffer.setBlock(pos.set(x, y, z), newState);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		buffer.commit();
+	}
+	
+	private static int getFarthest(int min, int max) {
+		return Math.max(Math.abs(min), Math.abs(max));
+	}
+	
+	private static int getNearest(int min, int max) {
+		return min <= 0 && max >= 0 ? 0 : Math.min(Math.abs(min), Math.abs(max));
+	}
+	
+	@FunctionalInterface
+	private interface IShapeDistance {
+		
+		double getDistance(int x, int y, int z);
+	}
 }
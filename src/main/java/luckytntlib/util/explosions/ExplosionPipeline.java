@@ -0,0 +1,209 @@
+package luckytntlib.util.explosions;
+
+import javax.annotation.Nullable;
+
+/**
+ * An ExplosionPipeline describes a block explosion of an {@link ImprovedExplosion} as a sequence of stages,
+ * which is run by {@link ImprovedExplosion#doBlockExplosion(ExplosionPipeline)}:
+ * <ol>
+ * <li>the ray stage shoots the explosion vectors of an {@link ExplosionPlan} or spreads a wavefront, depending on the {@link ExplosionEngine}</li>
+ * <li>the condition stage filters the blocks hit by the vectors with an optional {@link IBlockExplosionCondition}</li>
+ * <li>the dedupe stage drops blocks that have already been hit, using the bitmaps of an {@link ExplosionBlockSet}</li>
+ * <li>the apply stage either destroys the blocks or passes them to an {@link IForEachBlockExplosionEffect}</li>
+ * <li>the optional settle stage fills the crater with the fluids around it, see {@link FluidSettler}</li>
+ * </ol>
+ * Normally all vectors are shot before the first block is applied. In streaming mode every block is applied as soon as it is hit for the first time,
+ * so no list of blocks has to be kept besides the dedupe bitmaps. Vectors shot later see the changes made by the apply stage,
+ * which is why streaming suits effects that place blocks or spawn particles rather than effects that destroy blocks.
+ * <p>
+ * Pipelines are immutable and can be shared between explosions.
+ */
+public class ExplosionPipeline {
+
+	@Nullable public final ExplosionPlan plan;
+	public final float xzStrength, yStrength;
+	public final float resistanceImpact;
+	public final float randomVecLength;
+	public final boolean isStrongExplosion;
+	public final boolean fire;
+	@Nullable public final IBlockExplosionCondition condition;
+	@Nullable public final IForEachBlockExplosionEffect blockEffect;
+	public final boolean streaming;
+	public final boolean saveBlockPos;
+	public final ExplosionEngine engine;
+	public final boolean settleFluids;
+
+	private ExplosionPipeline(@Nullable ExplosionPlan plan, float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean isStrongExplosion, boolean fire, @Nullable IBlockExplosionCondition condition, @Nullable IForEachBlockExplosionEffect blockEffect, boolean streaming, boolean saveBlockPos, ExplosionEngine engine, boolean settleFluids) {
+		this.plan = plan;
+		this.xzStrength = xzStrength;
+		this.yStrength = yStrength;
+		this.resistanceImpact = resistanceImpact;
+		this.randomVecLength = randomVecLength;
+		this.isStrongExplosion = isStrongExplosion;
+		this.fire = fire;
+		this.condition = condition;
+		this.blockEffect = blockEffect;
+		this.streaming = streaming;
+		this.saveBlockPos = saveBlockPos;
+		this.engine = engine;
+		this.settleFluids = settleFluids;
+	}
+
+	/**
+	 * Gets the {@link ExplosionPlan} used by the ray stage of the {@link ExplosionEngine#RAYS} engine for an explosion of the given size.
+	 * @param size  the size of the explosion
+	 * @return the given plan if it was compiled for that size, otherwise the fitting plan
+	 */
+	public ExplosionPlan getPlan(int size) {
+		if(plan != null && plan.size == size) {
+			return plan;
+		}
+		return ExplosionPlan.get(size, xzStrength, yStrength);
+	}
+
+	/**
+	 * @return whether or not the vectors may be shot by multiple threads, which is only the case if no stage has to run on the thread of the level while shooting
+	 */
+	boolean allowsParallelRays() {
+		return condition == null && !streaming && engine == ExplosionEngine.RAYS;
+	}
+
+	public static class Builder {
+
+		@Nullable private ExplosionPlan plan = null;
+		private float xzStrength = 1f, yStrength = 1f;
+		private float resistanceImpact = 1f;
+		private float randomVecLength = 1f;
+		private boolean isStrongExplosion = false;
+		private boolean fire = false;
+		@Nullable private IBlockExplosionCondition condition = null;
+		@Nullable private IForEachBlockExplosionEffect blockEffect = null;
+		private boolean streaming = false;
+		private boolean saveBlockPos = true;
+		private ExplosionEngine engine = ExplosionEngine.RAYS;
+		private boolean settleFluids = false;
+
+		public Builder() {
+		}
+
+		private Builder(@Nullable ExplosionPlan plan, float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean isStrongExplosion, boolean fire, @Nullable IBlockExplosionCondition condition, @Nullable IForEachBlockExplosionEffect blockEffect, boolean streaming, boolean saveBlockPos, ExplosionEngine engine, boolean settleFluids) {
+			this.plan = plan;
+			this.xzStrength = xzStrength;
+			this.yStrength = yStrength;
+			this.resistanceImpact = resistanceImpact;
+			this.randomVecLength = randomVecLength;
+			this.isStrongExplosion = isStrongExplosion;
+			this.fire = fire;
+			this.condition = condition;
+			this.blockEffect = blockEffect;
+			this.streaming = streaming;
+			this.saveBlockPos = saveBlockPos;
+			this.engine = engine;
+			this.settleFluids = settleFluids;
+		}
+
+		/**
+		 * The precompiled explosion vectors, which also decide the x, z and y strength
+		 * @param plan
+		 */
+		public Builder plan(ExplosionPlan plan) {
+			return new Builder(plan, plan.xzStrength, plan.yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * Multipliers to the x and z and to the y vector addition, which make the explosion more powerful
+		 * @param xzStrength
+		 * @param yStrength
+		 */
+		public Builder strength(float xzStrength, float yStrength) {
+			return new Builder(null, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * The relative impact that explosion resistance of blocks has on the penetration force of explosion
+		 * @param resistanceImpact
+		 */
+		public Builder resistanceImpact(float resistanceImpact) {
+			return new Builder(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * The greater this value, the more distributed the length of the explosion vectors will be
+		 * @param randomVecLength
+		 */
+		public Builder randomVecLength(float randomVecLength) {
+			return new Builder(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * Whether or not fluids should be ignored in the explosion resistance calculation
+		 * @param isStrongExplosion
+		 */
+		public Builder strongExplosion(boolean isStrongExplosion) {
+			return new Builder(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * Whether or not the explosion should spawn fire after all blocks have been applied
+		 * @param fire
+		 */
+		public Builder fire(boolean fire) {
+			return new Builder(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * The condition on which a block hit by the vectors is passed on to the apply stage
+		 * @param condition
+		 */
+		public Builder condition(@Nullable IBlockExplosionCondition condition) {
+			return new Builder(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * What should happen to the blocks gotten by the explosion. If null the blocks are destroyed
+		 * @param blockEffect
+		 */
+		public Builder blockEffect(@Nullable IForEachBlockExplosionEffect blockEffect) {
+			return new Builder(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * Whether or not blocks should be applied as soon as they are hit instead of after all vectors have been shot
+		 * @param streaming
+		 */
+		public Builder streaming(boolean streaming) {
+			return new Builder(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * Whether or not the affected blocks should be saved to be used externally through {@link ImprovedExplosion#getToBlow()}
+		 * @param saveBlockPos
+		 */
+		public Builder saveBlockPos(boolean saveBlockPos) {
+			return new Builder(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * The way the blocks hit by the explosion are found, {@link ExplosionEngine#RAYS} by default
+		 * @param engine
+		 */
+		public Builder engine(ExplosionEngine engine) {
+			return new Builder(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * Whether or not the fluids around the crater should flow into it at once after the blocks have been destroyed, instead of over hundreds of ticks
+		 * @param settleFluids
+		 */
+		public Builder settleFluids(boolean settleFluids) {
+			return new Builder(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+
+		/**
+		 * Builds a new {@link ExplosionPipeline}
+		 */
+		public ExplosionPipeline build() {
+			return new ExplosionPipeline(plan, xzStrength, yStrength, resistanceImpact, randomVecLength, isStrongExplosion, fire, condition, blockEffect, streaming, saveBlockPos, engine, settleFluids);
+		}
+	}
+}
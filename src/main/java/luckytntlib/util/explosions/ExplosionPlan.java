@@ -0,0 +1,208 @@
+package luckytntlib.util.explosions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import luckytntlib.config.LuckyTNTLibConfigValues;
+import luckytntlib.util.tnteffects.TNTXStrengthEffect;
+
+/**
+ * An ExplosionPlan is the precompiled set of explosion vectors used by the block explosions of an {@link ImprovedExplosion}.
+ * <p>
+ * Finding the vectors requires scanning the whole cube around the explosion, which is by far the most expensive part of setting up a large explosion.
+ * Plans are therefore cached by size, performant mode, performance factor, traversal mode, adaptive mode and xz/y strength, so that the scan only happens once
+ * for every combination that is actually used, e.g. once per {@link TNTXStrengthEffect} and config change.
+ * <p>
+ * Adaptive plans skip the scan. They only hold a few root vectors pointing to the cells of a coarse grid on the faces of a cube,
+ * which split up into the vectors of finer grids while they are traced, see {@link ExplosionPlan#adaptive}.
+ */
+public final class ExplosionPlan {
+
+	private static final int MAX_CACHED_PLANS = 32;
+	/**
+	 * The number of grid cells along each side of a cube face that the root vectors of adaptive plans point to
+	 */
+	public static final int ADAPTIVE_ROOT_CELLS = 4;
+	private static final Map<Key, ExplosionPlan> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, ExplosionPlan> eldest) {
+			return size() > MAX_CACHED_PLANS;
+		}
+	};
+
+	public final int size;
+	public final boolean performant;
+	public final double performanceFactor;
+	public final float xzStrength, yStrength;
+	/**
+	 * Whether the explosion vectors visit every block along their way exactly once instead of advancing in fixed steps
+	 */
+	public final boolean voxelTraversal;
+	/**
+	 * Whether the explosion vectors start as a few root vectors that split into four whenever neighbouring vectors drift more than a block apart.
+	 * Every vector then visits every block along its way exactly once
+	 */
+	public final boolean adaptive;
+	/**
+	 * The distance every explosion vector travels per step, which is subtracted from the vector length
+	 */
+	public final double stepLength;
+	public final int rayCount;
+	final double[] dirX, dirY, dirZ;
+	final double[] stepX, stepY, stepZ;
+	final double[] distance;
+
+	private ExplosionPlan(int size, boolean performant, double performanceFactor, boolean voxelTraversal, boolean adaptive, float xzStrength, float yStrength) {
+		this.size = size;
+		this.performant = performant;
+		this.performanceFactor = performanceFactor;
+		this.voxelTraversal = voxelTraversal || adaptive;
+		this.adaptive = adaptive;
+		this.xzStrength = xzStrength;
+		this.yStrength = yStrength;
+		stepLength = performanceFactor * 1.5f - 0.225f;
+		if(adaptive) {
+			int count = 6 * ADAPTIVE_ROOT_CELLS * ADAPTIVE_ROOT_CELLS;
+			distance = new double[count];
+			dirX = new double[count];
+			dirY = new double[count];
+			dirZ = new double[count];
+			stepX = new double[count];
+			stepY = new double[count];
+			stepZ = new double[count];
+			double[] point = new double[3];
+			for(int ray = 0; ray < count; ray++) {
+				getCellPoint(ray / (ADAPTIVE_ROOT_CELLS * ADAPTIVE_ROOT_CELLS), 0, ray / ADAPTIVE_ROOT_CELLS % ADAPTIVE_ROOT_CELLS, ray % ADAPTIVE_ROOT_CELLS, point);
+				double dist = Math.sqrt(point[0] * point[0] + point[1] * point[1] + point[2] * point[2]);
+				distance[ray] = size;
+				dirX[ray] = point[0] / dist;
+				dirY[ray] = point[1] / dist;
+				dirZ[ray] = point[2] / dist;
+				stepX[ray] = dirX[ray] * performanceFactor * xzStrength;
+				stepY[ray] = dirY[ray] * performanceFactor * yStrength;
+				stepZ[ray] = dirZ[ray] * performanceFactor * xzStrength;
+			}
+			rayCount = count;
+			return;
+		}
+		int count = 0;
+		for(int offX = -size; offX <= size; offX++) {
+			for(int offY = -size; offY <= size; offY++) {
+				for(int offZ = -size; offZ <= size; offZ++) {
+					if(isOnShell(offX, offY, offZ)) {
+						count++;
+					}
+				}
+			}
+		}
+		distance = new double[count];
+		dirX = new double[count];
+		dirY = new double[count];
+		dirZ = new double[count];
+		stepX = new double[count];
+		stepY = new double[count];
+		stepZ = new double[count];
+		count = 0;
+		for(int offX = -size; offX <= size; offX++) {
+			for(int offY = -size; offY <= size; offY++) {
+				for(int offZ = -size; offZ <= size; offZ++) {
+					if(isOnShell(offX, offY, offZ)) {
+						double dist = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
+						distance[count] = dist;
+						dirX[count] = offX / dist;
+						dirY[count] = offY / dist;
+						dirZ[count] = offZ / dist;
+						stepX[count] = dirX[count] * performanceFactor * xzStrength;
+						stepY[count] = dirY[count] * performanceFactor * yStrength;
+						stepZ[count] = dirZ[count] * performanceFactor * xzStrength;
+						count++;
+					}
+				}
+			}
+		}
+		rayCount = count;
+	}
+
+	/**
+	 * Gets the center of a grid cell on the faces of the cube from -1 to 1 that the vectors of adaptive plans point to.
+	 * @param face  the face of the cube, in the order +x, -x, +y, -y, +z, -z
+	 * @param level  how often the root grid has been split, each split halving the cells
+	 * @param u  the first coordinate of the cell on the face
+	 * @param v  the second coordinate of the cell on the face
+	 * @param point  receives the x, y and z position of the center of the cell
+	 */
+	static void getCellPoint(int face, int level, int u, int v, double[] point) {
+		int cells = ADAPTIVE_ROOT_CELLS << level;
+		double a = 2d * (u + 0.5d) / cells - 1d;
+		double b = 2d * (v + 0.5d) / cells - 1d;
+		double side = face % 2 == 0 ? 1 : -1;
+		int axis = face / 2;
+		point[0] = axis == 0 ? side : a;
+		point[1] = axis == 1 ? side : axis == 0 ? a : b;
+		point[2] = axis == 2 ? side : b;
+	}
+	
+	/**
+	 * Decides whether an offset is one of the cells the explosion vectors point to.
+	 * Uses squared distances so that no square root has to be calculated for the whole cube.
+	 */
+	private boolean isOnShell(int offX, int offY, int offZ) {
+		int distanceSqr = offX * offX + offY * offY + offZ * offZ;
+		if(distanceSqr == 0) {
+			return false;
+		}
+		if(performant) {
+			return distanceSqr >= size * size && distanceSqr < (size + 1) * (size + 1);
+		}
+		return offX == -size || offX == size || offY == -size || offY == size || offZ == -size || offZ == size;
+	}
+
+	/**
+	 * Gets the cached ExplosionPlan for the given parameters and the current config, or compiles a new one if there is none yet.
+	 * @param size  the size of the explosion
+	 * @param xzStrength  a multiplier to the x and z vector addition
+	 * @param yStrength  a multiplier to the y vector addition
+	 * @return the ExplosionPlan
+	 */
+	public static ExplosionPlan get(int size, float xzStrength, float yStrength) {
+		Key key = new Key(size, LuckyTNTLibConfigValues.PERFORMANT_EXPLOSION.get(), LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get(), LuckyTNTLibConfigValues.VOXEL_EXPLOSION.get(), LuckyTNTLibConfigValues.ADAPTIVE_EXPLOSION.get(), xzStrength, yStrength);
+		synchronized(CACHE) {
+			ExplosionPlan plan = CACHE.get(key);
+			if(plan == null) {
+				plan = new ExplosionPlan(key.size(), key.performant(), key.performanceFactor(), key.voxelTraversal(), key.adaptive(), key.xzStrength(), key.yStrength());
+				CACHE.put(key, plan);
+			}
+			return plan;
+		}
+	}
+
+	/**
+	 * Removes all cached plans. Called whenever the config is (re)loaded, as plans compiled with old config values will not be used again.
+	 */
+	public static void clearCache() {
+		synchronized(CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	/**
+	 * Calculates how far an explosion vector of this plan can travel from the center of the explosion, assuming it hits nothing but air.
+	 * @param vecLength  the initial length of the vector
+	 * @return the greatest distance a block hit by the vector can have from the center
+	 */
+	public double getReach(float vecLength) {
+		return vecLength / stepLength * performanceFactor * Math.max(xzStrength, yStrength) + 2;
+	}
+
+	/**
+	 * @return whether or not this plan was compiled with the current config values
+	 */
+	public boolean matchesConfig() {
+		return performant == LuckyTNTLibConfigValues.PERFORMANT_EXPLOSION.get() && performanceFactor == LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() && voxelTraversal == (LuckyTNTLibConfigValues.VOXEL_EXPLOSION.get() || adaptive) && adaptive == LuckyTNTLibConfigValues.ADAPTIVE_EXPLOSION.get();
+	}
+
+	private static record Key(int size, boolean performant, double performanceFactor, boolean voxelTraversal, boolean adaptive, float xzStrength, float yStrength) {
+	}
+}
@@ -0,0 +1,72 @@
+package luckytntlib.util.explosions;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+
+/**
+ * An ExplosionRandom is the source of randomness of a single {@link ImprovedExplosion}.
+ * <p>
+ * It uses the same algorithm as {@link SplittableRandom} and is seeded from the seed of the level, the position of the explosion and the game time,
+ * so that the same explosion at the same time in the same world always turns out the same.
+ * Values drawn one after another are meant to be used by the thread of the level only.
+ * Explosion vectors instead draw from streams that are indexed by the vector, see {@link ExplosionRandom#getRayFloat(long, long)},
+ * which can be used by any number of threads at the same time and give the same result regardless of which thread shoots which vector.
+ */
+public class ExplosionRandom implements RandomGenerator {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long seed;
+
+	/**
+	 * Creates a new ExplosionRandom
+	 * @param seed  the seed
+	 */
+	public ExplosionRandom(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Creates a new ExplosionRandom for an explosion.
+	 * On the client the seed of the level is unknown and 0 is used instead.
+	 * @param level  the level the explosion happens in
+	 * @param x  the x center position
+	 * @param y  the y center position
+	 * @param z  the z center position
+	 * @return the ExplosionRandom
+	 */
+	public static ExplosionRandom of(Level level, double x, double y, double z) {
+		long seed = level instanceof ServerLevel serverLevel ? serverLevel.getSeed() : 0;
+		seed = mix64(seed + Double.doubleToLongBits(x) * GOLDEN_GAMMA);
+		seed = mix64(seed + Double.doubleToLongBits(y) * GOLDEN_GAMMA);
+		seed = mix64(seed + Double.doubleToLongBits(z) * GOLDEN_GAMMA);
+		return new ExplosionRandom(mix64(seed + level.getGameTime() * GOLDEN_GAMMA));
+	}
+
+	@Override
+	public long nextLong() {
+		return mix64(seed += GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Gets the value of an explosion vector from a stream of values indexed by the vector.
+	 * @param stream  the seed of the stream, which should be drawn from the ExplosionRandom of the explosion
+	 * @param ray  the index of the vector
+	 * @return a value between 0 (inclusive) and 1 (exclusive)
+	 */
+	public static float getRayFloat(long stream, long ray) {
+		return (mix64(stream + (ray + 1) * GOLDEN_GAMMA) >>> 40) * 0x1.0p-24f;
+	}
+
+	/**
+	 * The finalizer of SplitMix64, which is also used by {@link SplittableRandom}
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,458 @@
+package luckytntlib.util.explosions;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import luckytntlib.util.explosions.ImprovedExplosion.IRayHit;
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.material.FluidState;
+
+/**
+ * An ExplosionRayTracer shoots the explosion vectors of an {@link ExplosionPlan} for an {@link ImprovedExplosion}.
+ * <p>
+ * It keeps all state needed while tracing, so that every thread tracing vectors of the same explosion can use its own ExplosionRayTracer.
+ * Blocks are read through an {@link IExplosionBlockReader}, which is either the {@link ChunkSectionCursor} of the explosion or a reader of an {@link ExplosionSnapshot}.
+ * <p>
+ * Vectors are traced on primitive coordinates and a single {@link BlockPos.MutableBlockPos}, so that shooting a vector does not allocate anything,
+ * unless the damage calculator of the explosion has to be asked for the explosion resistance of a block.
+ */
+class ExplosionRayTracer {
+
+	private static final int RAYS_PER_TASK = 512;
+	private static final int MAX_SPLIT_LEVEL = 20;
+	private static ForkJoinPool pool;
+
+	private final ImprovedExplosion explosion;
+	private final ExplosionPlan plan;
+	private final IExplosionBlockReader reader;
+	private final BlockGetter blockGetter;
+	private final float resistanceImpact;
+	private final boolean isStrongExplosion;
+	private final IRayHit rayHit;
+	private final long stream;
+	private final float randomVecLength;
+	private final double originX, originY, originZ;
+	private final int minY, maxY;
+	private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+	private final double[] point = new double[3];
+	private BlockState lastState;
+	private float lastResistance;
+	private float vecLength, vecStep;
+	
+	/**
+	 * @param explosion  the explosion the vectors belong to
+	 * @param plan  the precompiled explosion vectors
+	 * @param reader  the reader used to get blocks
+	 * @param blockGetter  the BlockGetter passed to the damage calculator of the explosion
+	 * @param resistanceImpact  the relative impact that explosion resistance of blocks has on the penetration force of explosion
+	 * @param isStrongExplosion  whether or not fluids should be ignored in the explosion resistance calculation
+	 * @param rayHit  receives the blocks destroyed by the explosion vectors
+	 * @param stream  the seed of the stream the initial lengths of the vectors are drawn from, see {@link ExplosionRandom#getRayFloat(long, long)}
+	 * @param randomVecLength  the greater this value, the more distributed the length of the explosion vectors will be
+	 */
+	ExplosionRayTracer(ImprovedExplosion explosion, ExplosionPlan plan, IExplosionBlockReader reader, BlockGetter blockGetter, float resistanceImpact, boolean isStrongExplosion, IRayHit rayHit, long stream, float randomVecLength) {
+		this.explosion = explosion;
+		this.plan = plan;
+		this.reader = reader;
+		this.blockGetter = blockGetter;
+		this.resistanceImpact = resistanceImpact;
+		this.isStrongExplosion = isStrongExplosion;
+		this.rayHit = rayHit;
+		this.stream = stream;
+		this.randomVecLength = randomVecLength;
+		originX = explosion.posX;
+		originY = explosion.posY;
+		originZ = explosion.posZ;
+		minY = explosion.level.getMinBuildHeight();
+		maxY = explosion.level.getMaxBuildHeight();
+	}
+	
+	/**
+	 * Shoots a single explosion vector of the plan, including all vectors it splits into if the plan is adaptive.
+	 * @param ray  the index of the vector in the plan
+	 */
+	void traceRay(int ray) {
+		float vecLength = explosion.getVecLength(stream, ray, randomVecLength);
+		if(plan.adaptive) {
+			int cells = ExplosionPlan.ADAPTIVE_ROOT_CELLS;
+			traceBeam(ray / (cells * cells), 0, ray / cells % cells, ray % cells, vecLength, 0, 0);
+		}
+		else if(plan.voxelTraversal) {
+			this.vecLength = vecLength;
+			vecStep = 0;
+			traceVoxelSegment(plan.stepX[ray], plan.stepY[ray], plan.stepZ[ray], plan.distance[ray], 0, Double.POSITIVE_INFINITY);
+		}
+		else {
+			traceSteppedRay(ray, vecLength);
+		}
+	}
+	
+	/**
+	 * Shoots a range of the explosion vectors of the plan.
+	 * @param from  the index of the first vector to shoot
+	 * @param to  the index after the last vector to shoot
+	 */
+	void traceRays(int from, int to) {
+		for(int ray = from; ray < to; ray++) {
+			traceRay(ray);
+		}
+	}
+	
+	/**
+	 * Shoots a range of the explosion vectors of the plan through an {@link ExplosionSnapshot} on the worker threads of a {@link ForkJoinPool}.
+	 * Every worker thread collects the blocks destroyed by its vectors in its own {@link ExplosionBlockSet},
+	 * so the threads never have to share a set while tracing. The sets are merged into the given one afterwards.
+	 * @param explosion  the explosion the vectors belong to
+	 * @param plan  the precompiled explosion vectors
+	 * @param snapshot  the blocks around the explosion
+	 * @param stream  the seed of the stream the initial lengths of the vectors are drawn from
+	 * @param randomVecLength  the greater this value, the more distributed the length of the explosion vectors will be
+	 * @param resistanceImpact  the relative impact that explosion resistance of blocks has on the penetration force of explosion
+	 * @param isStrongExplosion  whether or not fluids should be ignored in the explosion resistance calculation
+	 * @param from  the index of the first vector to shoot
+	 * @param to  the index after the last vector to shoot
+	 * @param blocks  receives the blocks destroyed by the vectors
+	 */
+	static void traceParallel(ImprovedExplosion explosion, ExplosionPlan plan, ExplosionSnapshot snapshot, long stream, float randomVecLength, float resistanceImpact, boolean isStrongExplosion, int from, int to, ExplosionBlockSet blocks) {
+		Map<Thread, ExplosionBlockSet> threadBlocks = new ConcurrentHashMap<>();
+		getPool().invoke(new RayTask(explosion, plan, snapshot, stream, randomVecLength, resistanceImpact, isStrongExplosion, threadBlocks, from, to));
+		for(ExplosionBlockSet set : threadBlocks.values()) {
+			blocks.addAll(set);
+		}
+	}
+	
+	/**
+	 * Gets the pool shared by all parallel explosions, which is created the first time it is needed and keeps one core free for the server thread.
+	 */
+	private static synchronized ForkJoinPool getPool() {
+		if(pool == null) {
+			pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), forkJoinPool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+				thread.setName("LuckyTNTLib Explosion Worker-" + thread.getPoolIndex());
+				return thread;
+			}, null, false);
+		}
+		return pool;
+	}
+	
+	/**
+	 * Advances an explosion vector in fixed steps, which can visit the same block multiple times.
+	 * Steps inside of areas known to only contain air are skipped without reading any blocks.
+	 */
+	private void traceSteppedRay(int ray, float vecLength) {
+		double distance = plan.distance[ray];
+		double stepX = plan.stepX[ray];
+		double stepY = plan.stepY[ray];
+		double stepZ = plan.stepZ[ray];
+		double blockX = originX;
+		double blockY = originY;
+		double blockZ = originZ;
+		int sectionX = 0, sectionY = 0, sectionZ = 0;
+		boolean sectionChecked = false;
+		boolean inEmptyArea = false;
+		int areaX = 0, areaZ = 0, areaMinY = 0, areaMaxY = 0;
+		for(float vecStep = 0; vecStep < vecLength; vecStep += plan.stepLength) {
+			blockX += stepX;
+			blockY += stepY;
+			blockZ += stepZ;
+			int x = (int)blockX;
+			int y = (int)blockY;
+			int z = (int)blockZ;
+			if(y < minY || y >= maxY) {
+				break;
+			}
+			if(inEmptyArea && x >> 4 == areaX && z >> 4 == areaZ && y >= areaMinY && y < areaMaxY) {
+				continue;
+			}
+			inEmptyArea = false;
+			if(!sectionChecked || x >> 4 != sectionX || y >> 4 != sectionY || z >> 4 != sectionZ) {
+				sectionX = x >> 4;
+				sectionY = y >> 4;
+				sectionZ = z >> 4;
+				sectionChecked = true;
+				if(reader.isInEmptyArea(x, y, z)) {
+					inEmptyArea = true;
+					areaX = sectionX;
+					areaZ = sectionZ;
+					areaMinY = reader.getEmptyMinY();
+					areaMaxY = reader.getEmptyMaxY();
+					int steps = getStepsInside(blockX, stepX, areaX << 4, (areaX << 4) + 16);
+					steps = Math.min(steps, getStepsInside(blockY, stepY, areaMinY, areaMaxY));
+					steps = Math.min(steps, getStepsInside(blockZ, stepZ, areaZ << 4, (areaZ << 4) + 16));
+					if(steps > 0) {
+						blockX += steps * stepX;
+						blockY += steps * stepY;
+						blockZ += steps * stepZ;
+						vecStep += steps * plan.stepLength;
+					}
+					continue;
+				}
+			}
+			vecLength = explodeBlock(pos.set(x, y, z), vecLength, 1f, distance);
+		}
+	}
+	
+	/**
+	 * Calculates how many further steps an explosion vector can take along one axis while the block it hits, which is found by truncating its position, stays between min and max.
+	 * @param position  the current position on the axis
+	 * @param step  the vector addition on the axis per step
+	 * @param min  the lowest block position of the area
+	 * @param max  the highest block position of the area, exclusive
+	 * @return the number of steps, which is 0 if the next step would already leave the area
+	 */
+	private static int getStepsInside(double position, double step, int min, int max) {
+		double steps;
+		if(step > 0) {
+			steps = Math.ceil((max - 1 - position) / step) - 1;
+		}
+		else if(step < 0) {
+			steps = Math.floor((position - min) / -step);
+		}
+		else {
+			return Integer.MAX_VALUE;
+		}
+		return steps <= 0 ? 0 : (int)Math.min(steps, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Advances an explosion vector through the block grid (Amanatides-Woo), visiting every block along its way exactly once.
+	 * The energy lost in a block scales with the length of the part of the vector that lies inside of it.
+	 * The vector is clipped to the build height before it is traced and jumps across areas known to only contain air without reading any blocks.
+	 * Only the part of the vector between start and end is traced, measured in steps from the center of the explosion,
+	 * continuing with the length and progress of the vector kept in {@link ExplosionRayTracer#vecLength} and {@link ExplosionRayTracer#vecStep}.
+	 * @param dX  the vector addition on the x axis per step
+	 * @param dY  the vector addition on the y axis per step
+	 * @param dZ  the vector addition on the z axis per step
+	 * @param distance  the distance passed to the rayHit
+	 * @param start  the number of steps from the center at which to start
+	 * @param end  the number of steps from the center at which to stop
+	 * @return whether or not the vector reached the end with force left
+	 */
+	private boolean traceVoxelSegment(double dX, double dY, double dZ, double distance, double start, double end) {
+		double limit = end;
+		if(dY > 0) {
+			limit = Math.min(limit, (maxY - originY) / dY);
+		}
+		else if(dY < 0) {
+			limit = Math.min(limit, (minY - originY) / dY);
+		}
+		else if(originY < minY || originY >= maxY) {
+			return false;
+		}
+		int x = Mth.floor(originX + start * dX);
+		int y = Mth.floor(originY + start * dY);
+		int z = Mth.floor(originZ + start * dZ);
+		int signX = dX > 0 ? 1 : -1;
+		int signY = dY > 0 ? 1 : -1;
+		int signZ = dZ > 0 ? 1 : -1;
+		double deltaX = dX == 0 ? Double.POSITIVE_INFINITY : 1d / Math.abs(dX);
+		double deltaY = dY == 0 ? Double.POSITIVE_INFINITY : 1d / Math.abs(dY);
+		double deltaZ = dZ == 0 ? Double.POSITIVE_INFINITY : 1d / Math.abs(dZ);
+		double nextX = getNextCrossing(originX, dX, x, deltaX);
+		double nextY = getNextCrossing(originY, dY, y, deltaY);
+		double nextZ = getNextCrossing(originZ, dZ, z, deltaZ);
+		int sectionX = 0, sectionY = 0, sectionZ = 0;
+		boolean sectionChecked = false;
+		double traveled = start;
+		while(vecStep < vecLength && traveled < limit) {
+			if(!sectionChecked || x >> 4 != sectionX || y >> 4 != sectionY || z >> 4 != sectionZ) {
+				sectionX = x >> 4;
+				sectionY = y >> 4;
+				sectionZ = z >> 4;
+				sectionChecked = true;
+				if(reader.isInEmptyArea(x, y, z)) {
+					int minX = sectionX << 4;
+					int minZ = sectionZ << 4;
+					double exitX = dX > 0 ? (minX + 16 - originX) / dX : dX < 0 ? (minX - originX) / dX : Double.POSITIVE_INFINITY;
+					double exitY = dY > 0 ? (reader.getEmptyMaxY() - originY) / dY : dY < 0 ? (reader.getEmptyMinY() - originY) / dY : Double.POSITIVE_INFINITY;
+					double exitZ = dZ > 0 ? (minZ + 16 - originZ) / dZ : dZ < 0 ? (minZ - originZ) / dZ : Double.POSITIVE_INFINITY;
+					double exit = Math.min(Math.min(exitX, exitY), Math.min(exitZ, limit));
+					vecStep += (float)(exit - traveled) * plan.stepLength;
+					traveled = exit;
+					if(exit >= limit) {
+						break;
+					}
+					boolean leaveX = exit == exitX;
+					boolean leaveY = !leaveX && exit == exitY;
+					boolean leaveZ = !leaveX && !leaveY;
+					x = leaveX ? (dX > 0 ? minX + 16 : minX - 1) : Mth.clamp(Mth.floor(originX + exit * dX), minX, minX + 15);
+					y = leaveY ? (dY > 0 ? reader.getEmptyMaxY() : reader.getEmptyMinY() - 1) : Mth.clamp(Mth.floor(originY + exit * dY), reader.getEmptyMinY(), reader.getEmptyMaxY() - 1);
+					z = leaveZ ? (dZ > 0 ? minZ + 16 : minZ - 1) : Mth.clamp(Mth.floor(originZ + exit * dZ), minZ, minZ + 15);
+					nextX = getNextCrossing(originX, dX, x, deltaX);
+					nextY = getNextCrossing(originY, dY, y, deltaY);
+					nextZ = getNextCrossing(originZ, dZ, z, deltaZ);
+					sectionChecked = false;
+					continue;
+				}
+			}
+			double next = Math.min(Math.min(nextX, nextY), Math.min(nextZ, limit));
+			float weight = (float)(next - traveled);
+			if(weight > 0) {
+				vecLength = explodeBlock(pos.set(x, y, z), vecLength, weight, distance);
+				vecStep += weight * plan.stepLength;
+			}
+			traveled = next;
+			if(nextX <= nextY && nextX <= nextZ) {
+				x += signX;
+				nextX += deltaX;
+			}
+			else if(nextY <= nextZ) {
+				y += signY;
+				nextY += deltaY;
+			}
+			else {
+				z += signZ;
+				nextZ += deltaZ;
+			}
+		}
+		return vecStep < vecLength && traveled >= end;
+	}
+	
+	/**
+	 * Traces a vector of an adaptive plan, which points to the center of a cell of the grid on the faces of a cube.
+	 * Once the vector is so far from the center that the vectors of the neighbouring cells are more than a block apart,
+	 * it splits into the vectors of the four cells of the next finer grid, which continue from the same distance.
+	 * Every child continues with the remaining length of its parent, so a split neither adds nor removes penetration force,
+	 * vectors that have been stopped never split and the number of blocks visited grows with the volume of the crater.
+	 * @param face  the face of the cube
+	 * @param level  how often the root grid has been split
+	 * @param u  the first coordinate of the cell on the face
+	 * @param v  the second coordinate of the cell on the face
+	 * @param vecLength  the remaining length of the vector
+	 * @param vecStep  the progress of the vector
+	 * @param start  the number of steps from the center at which the vector starts
+	 */
+	private void traceBeam(int face, int level, int u, int v, float vecLength, float vecStep, double start) {
+		ExplosionPlan.getCellPoint(face, level, u, v, point);
+		double length = Math.sqrt(point[0] * point[0] + point[1] * point[1] + point[2] * point[2]);
+		double dX = point[0] / length * plan.performanceFactor * plan.xzStrength;
+		double dY = point[1] / length * plan.performanceFactor * plan.yStrength;
+		double dZ = point[2] / length * plan.performanceFactor * plan.xzStrength;
+		double end = Double.POSITIVE_INFINITY;
+		if(level < MAX_SPLIT_LEVEL) {
+			int cells = ExplosionPlan.ADAPTIVE_ROOT_CELLS << level;
+			end = length * cells / 2d / (plan.performanceFactor * Math.max(plan.xzStrength, plan.yStrength));
+		}
+		this.vecLength = vecLength;
+		this.vecStep = vecStep;
+		if(!traceVoxelSegment(dX, dY, dZ, explosion.size, start, end)) {
+			return;
+		}
+		float remaining = this.vecLength;
+		float progress = this.vecStep;
+		for(int child = 0; child < 4; child++) {
+			traceBeam(face, level + 1, u * 2 + (child & 1), v * 2 + (child >> 1), remaining, progress, end);
+		}
+	}
+	
+	/**
+	 * Calculates at which point an explosion vector leaves the given block on one axis.
+	 * @param origin  the origin of the vector on the axis
+	 * @param direction  the vector addition on the axis per step
+	 * @param block  the block position on the axis
+	 * @param delta  the length of the vector needed to cross a whole block on the axis
+	 */
+	private static double getNextCrossing(double origin, double direction, int block, double delta) {
+		if(direction == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return (direction > 0 ? block + 1 - origin : origin - block) * delta;
+	}
+	
+	/**
+	 * Reduces the penetration force of an explosion vector by the explosion resistance of the block at the given position
+	 * and passes the block to the rayHit if it is destroyed.
+	 * @param weight  the share of a full step the explosion vector spent inside of the block
+	 * @return the remaining length of the explosion vector
+	 */
+	private float explodeBlock(BlockPos pos, float vecLength, float weight, double distance) {
+		BlockState blockState = reader.getBlockState(pos);
+		FluidState fluidState = blockState.getFluidState();
+		if(!(isStrongExplosion && !fluidState.isEmpty())) {
+			float resistance = getResistance(blockState);
+			if(Float.isNaN(resistance)) {
+				Optional<Float> explosionResistance = explosion.damageCalculator.getBlockExplosionResistance(explosion, blockGetter, pos, blockState, fluidState);
+				if(explosionResistance.isPresent()) {
+					vecLength -= (explosionResistance.get() + 0.3f) * 0.3f * resistanceImpact * weight;
+				}
+			}
+			else if(resistance != ExplosionResistanceTable.NO_RESISTANCE) {
+				vecLength -= (resistance + 0.3f) * 0.3f * resistanceImpact * weight;
+			}
+			if(vecLength > 0 && !blockState.isAir() && (explosion.alwaysExplodes || explosion.damageCalculator.shouldBlockExplode(explosion, blockGetter, pos, blockState, vecLength))) {
+				rayHit.hit(pos, blockState, distance);
+			}
+		}
+		else {
+			rayHit.hit(pos, blockState, distance);
+		}
+		return vecLength;
+	}
+	
+	/**
+	 * Gets the explosion resistance of a state from the {@link ExplosionResistanceTable} if the {@link ImprovedExplosion#damageCalculator} of the explosion allows it.
+	 * Remembers the last state, as explosion vectors often pass through multiple blocks of the same kind in a row.
+	 * @return the explosion resistance, {@link ExplosionResistanceTable#NO_RESISTANCE} or {@link ExplosionResistanceTable#DYNAMIC} if the calculator has to be used
+	 */
+	private float getResistance(BlockState state) {
+		if(!explosion.tableResistance) {
+			return ExplosionResistanceTable.DYNAMIC;
+		}
+		if(state != lastState) {
+			lastResistance = ExplosionResistanceTable.getResistance(state);
+			lastState = state;
+		}
+		return lastResistance;
+	}
+	
+	/**
+	 * Shoots a range of the explosion vectors of a plan, splitting it up into smaller tasks until it is small enough to be shot by one thread.
+	 * The root vectors of adaptive plans each get their own task, as each of them can split into many vectors.
+	 */
+	private static class RayTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final ImprovedExplosion explosion;
+		private final ExplosionPlan plan;
+		private final ExplosionSnapshot snapshot;
+		private final long stream;
+		private final float randomVecLength;
+		private final float resistanceImpact;
+		private final boolean isStrongExplosion;
+		private final Map<Thread, ExplosionBlockSet> threadBlocks;
+		private final int from, to;
+		
+		private RayTask(ImprovedExplosion explosion, ExplosionPlan plan, ExplosionSnapshot snapshot, long stream, float randomVecLength, float resistanceImpact, boolean isStrongExplosion, Map<Thread, ExplosionBlockSet> threadBlocks, int from, int to) {
+			this.explosion = explosion;
+			this.plan = plan;
+			this.snapshot = snapshot;
+			this.stream = stream;
+			this.randomVecLength = randomVecLength;
+			this.resistanceImpact = resistanceImpact;
+			this.isStrongExplosion = isStrongExplosion;
+			this.threadBlocks = threadBlocks;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= (plan.adaptive ? 1 : RAYS_PER_TASK)) {
+				ExplosionBlockSet blocks = threadBlocks.computeIfAbsent(Thread.currentThread(), thread -> new ExplosionBlockSet());
+				ExplosionRayTracer tracer = new ExplosionRayTracer(explosion, plan, snapshot.reader(), snapshot, resistanceImpact, isStrongExplosion, (pos, blockState, distance) -> blocks.add(pos), stream, randomVecLength);
+				tracer.traceRays(from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new RayTask(explosion, plan, snapshot, stream, randomVecLength, resistanceImpact, isStrongExplosion, threadBlocks, from, middle), new RayTask(explosion, plan, snapshot, stream, randomVecLength, resistanceImpact, isStrongExplosion, threadBlocks, middle, to));
+		}
+	}
+}
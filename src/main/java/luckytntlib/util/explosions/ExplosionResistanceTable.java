@@ -0,0 +1,129 @@
+package luckytntlib.util.explosions;
+
+import java.util.Arrays;
+
+import luckytntlib.block.LTNTBlock;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.EntityBasedExplosionDamageCalculator;
+import net.minecraft.world.level.Explosion;
+import net.minecraft.world.level.ExplosionDamageCalculator;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.material.Fluid;
+import net.minecraft.world.level.material.FluidState;
+import net.minecraftforge.common.extensions.IForgeBlock;
+import net.minecraftforge.common.extensions.IForgeFluid;
+
+/**
+ * The ExplosionResistanceTable holds the explosion resistance of every {@link BlockState} in a dense array indexed by {@link Block#BLOCK_STATE_REGISTRY} ids.
+ * <p>
+ * For almost all states the resistance used by an {@link ExplosionDamageCalculator} only depends on the state itself,
+ * so explosions can look it up here instead of asking the calculator for every block they touch.
+ * States of blocks or fluids that override the position dependent resistance hooks, like {@link LTNTBlock#getExplosionResistance(BlockState, BlockGetter, BlockPos, Explosion)},
+ * are marked as {@link ExplosionResistanceTable#DYNAMIC} and still have to be passed to the calculator.
+ * <p>
+ * The table is built lazily and invalidated whenever registries or tags are reloaded.
+ */
+public class ExplosionResistanceTable {
+
+	/**
+	 * Marks states without any explosion resistance, for which the calculator would return an empty Optional
+	 */
+	public static final float NO_RESISTANCE = -1f;
+	/**
+	 * Marks states whose explosion resistance depends on more than the state itself
+	 */
+	public static final float DYNAMIC = Float.NaN;
+
+	private static volatile float[] table;
+
+	/**
+	 * Gets the explosion resistance of the given state as the default {@link ExplosionDamageCalculator} would calculate it.
+	 * @param state  the BlockState
+	 * @return the explosion resistance, {@link ExplosionResistanceTable#NO_RESISTANCE} or {@link ExplosionResistanceTable#DYNAMIC}
+	 */
+	public static float getResistance(BlockState state) {
+		float[] table = ExplosionResistanceTable.table;
+		int id = Block.BLOCK_STATE_REGISTRY.getId(state);
+		if(table == null || id >= table.length) {
+			table = build();
+		}
+		return id < 0 || id >= table.length ? DYNAMIC : table[id];
+	}
+
+	/**
+	 * Forgets the current table, which will be rebuilt the next time it is needed.
+	 */
+	public static void invalidate() {
+		table = null;
+	}
+
+	/**
+	 * Decides whether or not explosions using the given calculator may use this table instead of {@link ExplosionDamageCalculator#getBlockExplosionResistance}.
+	 * This is the case for the default calculator and for {@link EntityBasedExplosionDamageCalculator}s of entities that do not change the resistance of blocks.
+	 * @param calculator  the ExplosionDamageCalculator
+	 * @param source  the entity the calculator is based on or null
+	 */
+	public static boolean supportsResistance(ExplosionDamageCalculator calculator, Entity source) {
+		if(calculator.getClass() == ExplosionDamageCalculator.class) {
+			return true;
+		}
+		return calculator.getClass() == EntityBasedExplosionDamageCalculator.class && source != null && !overrides(source.getClass(), Entity.class, "getBlockExplosionResistance", Explosion.class, BlockGetter.class, BlockPos.class, BlockState.class, FluidState.class, float.class);
+	}
+
+	/**
+	 * Decides whether or not explosions using the given calculator can skip {@link ExplosionDamageCalculator#shouldBlockExplode}, because it always returns true.
+	 * @param calculator  the ExplosionDamageCalculator
+	 * @param source  the entity the calculator is based on or null
+	 */
+	public static boolean alwaysExplodes(ExplosionDamageCalculator calculator, Entity source) {
+		if(calculator.getClass() == ExplosionDamageCalculator.class) {
+			return true;
+		}
+		return calculator.getClass() == EntityBasedExplosionDamageCalculator.class && source != null && !overrides(source.getClass(), Entity.class, "shouldBlockExplode", Explosion.class, BlockGetter.class, BlockPos.class, BlockState.class, float.class);
+	}
+
+	private static synchronized float[] build() {
+		float[] table = ExplosionResistanceTable.table;
+		if(table != null && table.length == Block.BLOCK_STATE_REGISTRY.size()) {
+			return table;
+		}
+		table = new float[Block.BLOCK_STATE_REGISTRY.size()];
+		Arrays.fill(table, DYNAMIC);
+		for(BlockState state : Block.BLOCK_STATE_REGISTRY) {
+			int id = Block.BLOCK_STATE_REGISTRY.getId(state);
+			if(id >= 0 && id < table.length) {
+				table[id] = calculateResistance(state);
+			}
+		}
+		ExplosionResistanceTable.table = table;
+		return table;
+	}
+
+	private static float calculateResistance(BlockState state) {
+		FluidState fluidState = state.getFluidState();
+		if(state.isAir() && fluidState.isEmpty()) {
+			return NO_RESISTANCE;
+		}
+		Block block = state.getBlock();
+		Fluid fluid = fluidState.getType();
+		if(overrides(block.getClass(), IForgeBlock.class, "getExplosionResistance", BlockState.class, BlockGetter.class, BlockPos.class, Explosion.class) || overrides(fluid.getClass(), IForgeFluid.class, "getExplosionResistance", FluidState.class, BlockGetter.class, BlockPos.class, Explosion.class)) {
+			return DYNAMIC;
+		}
+		return Math.max(block.getExplosionResistance(), fluidState.getExplosionResistance());
+	}
+
+	/**
+	 * @return whether or not the given class overrides the public method of the base class or interface with the given name and parameters
+	 */
+	static boolean overrides(Class<?> clazz, Class<?> base, String name, Class<?>... parameters) {
+		try {
+			return clazz.getMethod(name, parameters).getDeclaringClass() != base;
+		}
+		catch(NoSuchMethodException | SecurityException e) {
+			return true;
+		}
+	}
+}
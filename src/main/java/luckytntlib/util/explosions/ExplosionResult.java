@@ -0,0 +1,361 @@
+package luckytntlib.util.explosions;
+
+import java.nio.LongBuffer;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+import net.minecraft.core.BlockPos;
+import net.minecraftforge.event.level.ExplosionEvent;
+
+/**
+ * An ExplosionResult holds the blocks affected by an {@link ImprovedExplosion}.
+ * <p>
+ * Every position is packed into a single long and the positions are kept sorted in chunk order,
+ * so that blocks of the same chunk follow each other and positions can be found by a binary search.
+ * Unlike the old int encoding there is no limit to how far a block may be from the center of the explosion.
+ * <p>
+ * {@link ExplosionResult#asList()} offers a lazy {@link List} view, which is what {@link ImprovedExplosion#getToBlow()} returns.
+ * The view never copies the positions, and blocks removed from or added to it, e.g. by listeners of the {@link ExplosionEvent.Detonate},
+ * are written back to this result.
+ * <p>
+ * The positions of giant explosions are kept outside of the Java heap in buffers of the {@link ExplosionBufferPool}, see {@link ExplosionResult#release()}.
+ */
+public class ExplosionResult {
+
+	private static final LongBuffer EMPTY = LongBuffer.wrap(new long[0]);
+
+	private LongBuffer keys = EMPTY;
+	private int size;
+	@Nullable private List<BlockPos> view;
+
+	/**
+	 * Creates a new empty ExplosionResult
+	 */
+	public ExplosionResult() {
+	}
+
+	/**
+	 * Creates a new ExplosionResult holding the given blocks
+	 * @param blocks  the blocks
+	 */
+	public ExplosionResult(ExplosionBlockSet blocks) {
+		keys = toSortedKeys(blocks);
+		size = blocks.size();
+	}
+
+	/**
+	 * Packs a position into a long that sorts by chunk x, chunk z, y, z and x.
+	 * The sign bit is flipped, so that signed comparisons keep the order.
+	 */
+	static long toKey(int x, int y, int z) {
+		long chunkX = (x >> 4) + (1L << 21);
+		long chunkZ = (z >> 4) + (1L << 21);
+		long height = y + (1L << 11);
+		return (chunkX << 42 | chunkZ << 20 | height << 8 | (z & 15) << 4 | (x & 15)) ^ Long.MIN_VALUE;
+	}
+
+	static BlockPos.MutableBlockPos fromKey(long key, BlockPos.MutableBlockPos pos) {
+		key ^= Long.MIN_VALUE;
+		int x = (int)(((key >>> 42) - (1L << 21)) << 4 | key & 15);
+		int z = (int)(((key >>> 20 & (1L << 22) - 1) - (1L << 21)) << 4 | key >>> 4 & 15);
+		int y = (int)((key >>> 8 & (1L << 12) - 1) - (1L << 11));
+		return pos.set(x, y, z);
+	}
+
+	/**
+	 * @return whether or not the positions packed into the given keys are part of the same chunk
+	 */
+	static boolean isSameChunk(long key, long other) {
+		return (key ^ other) >>> 20 == 0;
+	}
+
+	private static LongBuffer toSortedKeys(ExplosionBlockSet blocks) {
+		LongBuffer keys = ExplosionBufferPool.acquire(blocks.size());
+		int[] index = new int[1];
+		blocks.forEach(pos -> keys.put(index[0]++, toKey(pos.getX(), pos.getY(), pos.getZ())));
+		ExplosionBufferPool.sort(keys, blocks.size());
+		return keys;
+	}
+
+	/**
+	 * Searches a key by a binary search.
+	 * @return the index of the key, or (-(insertion point) - 1) if it is not part of this result
+	 */
+	private int search(long key) {
+		int low = 0, high = size - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			long value = keys.get(middle);
+			if(value < key) {
+				low = middle + 1;
+			}
+			else if(value > key) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Adds the given blocks to this result.
+	 * @param blocks  the blocks
+	 */
+	public void addAll(ExplosionBlockSet blocks) {
+		LongBuffer added = toSortedKeys(blocks);
+		int addedSize = blocks.size();
+		LongBuffer merged = ExplosionBufferPool.acquire(size + addedSize);
+		int i = 0, j = 0, count = 0;
+		while(i < size || j < addedSize) {
+			long key;
+			if(j >= addedSize || (i < size && keys.get(i) <= added.get(j))) {
+				key = keys.get(i++);
+			}
+			else {
+				key = added.get(j++);
+			}
+			if(count == 0 || merged.get(count - 1) != key) {
+				merged.put(count++, key);
+			}
+		}
+		ExplosionBufferPool.release(keys);
+		ExplosionBufferPool.release(added);
+		keys = merged;
+		size = count;
+	}
+
+	/**
+	 * @return the number of blocks in this result
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param index  the index of the block in chunk order
+	 * @return a new BlockPos of the block at the given index
+	 */
+	public BlockPos get(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		return fromKey(keys.get(index), new BlockPos.MutableBlockPos()).immutable();
+	}
+
+	/**
+	 * @param index  the index of the block in chunk order
+	 * @param pos  the position to set to the block
+	 * @return the given position
+	 */
+	BlockPos.MutableBlockPos get(int index, BlockPos.MutableBlockPos pos) {
+		return fromKey(keys.get(index), pos);
+	}
+
+	/**
+	 * Checks whether or not the given block is part of this result.
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 */
+	public boolean contains(int x, int y, int z) {
+		return search(toKey(x, y, z)) >= 0;
+	}
+
+	public boolean contains(BlockPos pos) {
+		return contains(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	/**
+	 * Adds a block to this result.
+	 * @param pos  the position of the block
+	 * @return whether or not the block was not part of this result yet
+	 */
+	public boolean add(BlockPos pos) {
+		long key = toKey(pos.getX(), pos.getY(), pos.getZ());
+		int index = search(key);
+		if(index >= 0) {
+			return false;
+		}
+		index = -index - 1;
+		if(size == keys.capacity()) {
+			LongBuffer grown = ExplosionBufferPool.acquire(Math.max(16, size + (size >> 1)));
+			grown.put(0, keys, 0, size);
+			ExplosionBufferPool.release(keys);
+			keys = grown;
+		}
+		keys.put(index + 1, keys, index, size - index);
+		keys.put(index, key);
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes a block from this result.
+	 * @param pos  the position of the block
+	 * @return whether or not the block was part of this result
+	 */
+	public boolean remove(BlockPos pos) {
+		int index = search(toKey(pos.getX(), pos.getY(), pos.getZ()));
+		if(index < 0) {
+			return false;
+		}
+		removeAt(index);
+		return true;
+	}
+
+	private void removeAt(int index) {
+		keys.put(index, keys, index + 1, size - index - 1);
+		size--;
+	}
+
+	/**
+	 * Removes all blocks matching the filter from this result in a single pass.
+	 * @param filter  the filter, which may be passed a mutable position
+	 * @return whether or not any block was removed
+	 */
+	public boolean removeIf(Predicate<BlockPos> filter) {
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		int count = 0;
+		for(int index = 0; index < size; index++) {
+			long key = keys.get(index);
+			if(!filter.test(fromKey(key, pos))) {
+				keys.put(count++, key);
+			}
+		}
+		boolean removed = count != size;
+		size = count;
+		return removed;
+	}
+
+	/**
+	 * Removes all blocks from this result.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Returns the buffer of this result to the {@link ExplosionBufferPool} if its positions are kept outside of the heap, which empties this result.
+	 * Results on the heap are left untouched.
+	 */
+	void release() {
+		if(keys.isDirect()) {
+			ExplosionBufferPool.release(keys);
+			keys = EMPTY;
+			size = 0;
+		}
+	}
+
+	/**
+	 * Passes every block of this result to the action in chunk order.
+	 * @implNote the position passed is mutable and must be copied if it is kept
+	 * @param action  the action
+	 */
+	public void forEach(Consumer<BlockPos> action) {
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		for(int index = 0; index < size; index++) {
+			action.accept(fromKey(keys.get(index), pos));
+		}
+	}
+
+	/**
+	 * Gets a {@link List} view of this result, which creates the BlockPos of a block only when it is accessed.
+	 * Blocks can be removed from and added to the view, which changes this result, but not be replaced, as the order is fixed.
+	 * @return the view
+	 */
+	public List<BlockPos> asList() {
+		if(view == null) {
+			view = new View();
+		}
+		return view;
+	}
+
+	private class View extends AbstractList<BlockPos> implements RandomAccess {
+
+		@Override
+		public BlockPos get(int index) {
+			return ExplosionResult.this.get(index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object object) {
+			return object instanceof BlockPos pos && ExplosionResult.this.contains(pos);
+		}
+
+		@Override
+		public int indexOf(Object object) {
+			if(object instanceof BlockPos pos) {
+				int index = search(toKey(pos.getX(), pos.getY(), pos.getZ()));
+				return index < 0 ? -1 : index;
+			}
+			return -1;
+		}
+
+		@Override
+		public int lastIndexOf(Object object) {
+			return indexOf(object);
+		}
+
+		@Override
+		public boolean add(BlockPos pos) {
+			modCount++;
+			return ExplosionResult.this.add(pos);
+		}
+
+		@Override
+		public BlockPos remove(int index) {
+			BlockPos pos = get(index);
+			modCount++;
+			removeAt(index);
+			return pos;
+		}
+
+		@Override
+		public boolean remove(Object object) {
+			if(object instanceof BlockPos pos && ExplosionResult.this.remove(pos)) {
+				modCount++;
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean removeIf(Predicate<? super BlockPos> filter) {
+			modCount++;
+			return ExplosionResult.this.removeIf(pos -> filter.test(pos.immutable()));
+		}
+
+		@Override
+		public boolean removeAll(Collection<?> collection) {
+			return removeIf(collection::contains);
+		}
+
+		@Override
+		public boolean retainAll(Collection<?> collection) {
+			return removeIf(pos -> !collection.contains(pos));
+		}
+
+		@Override
+		public void clear() {
+			modCount++;
+			ExplosionResult.this.clear();
+		}
+	}
+}
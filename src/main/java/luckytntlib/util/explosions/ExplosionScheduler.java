@@ -0,0 +1,343 @@
+package luckytntlib.util.explosions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import luckytntlib.config.LuckyTNTLibConfigValues;
+import luckytntlib.util.IExplosiveEntity;
+import luckytntlib.util.tnteffects.PrimedTNTEffect;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.phys.Vec3;
+
+/**
+ * The ExplosionScheduler of a {@link ServerLevel} spreads the explosions happening in that level over multiple ticks.
+ * <p>
+ * If enabled in the config, {@link PrimedTNTEffect#baseTick(IExplosiveEntity)} does not detonate explosives right away but schedules them here.
+ * At the end of every tick the scheduler detonates as many of them as fit into the configured time budget, closest to a player first.
+ * Explosives in chunks no player can see are deferred until all visible ones have been detonated,
+ * but no explosive waits longer than {@link ExplosionScheduler#MAX_WAITING_TICKS} ticks.
+ * <p>
+ * The scheduler also continues the {@link IncrementalExplosion}s of its level with whatever time is left of the budget.
+ * <p>
+ * If explosion coalescing is enabled in the config, explosives whose {@link PrimedTNTEffect#canCoalesce()} are held back until the end of the tick.
+ * Explosives with the same effect that are close to each other are then grouped and detonated together by {@link PrimedTNTEffect#detonateCoalesced(List)},
+ * before they are scheduled or detonated like any other explosive.
+ * <p>
+ * Finally, the scheduler runs the light checks deferred by {@link BlockWriteBuffer}s of its level, the highest blocks first,
+ * at least {@link ExplosionScheduler#LIGHT_CHECKS_PER_CHECK} per tick and more as long as the budget allows.
+ */
+public class ExplosionScheduler {
+
+	/**
+	 * The number of ticks after which a scheduled explosive is detonated, regardless of the time budget
+	 */
+	public static final int MAX_WAITING_TICKS = 100;
+	/**
+	 * The number of deferred light checks between two checks of the time budget
+	 */
+	public static final int LIGHT_CHECKS_PER_CHECK = 256;
+	private static final Map<ServerLevel, ExplosionScheduler> SCHEDULERS = new HashMap<>();
+
+	private final ServerLevel level;
+	private final PriorityQueue<Detonation> detonations = new PriorityQueue<>(Comparator.comparing((Detonation detonation) -> !detonation.observed).thenComparingDouble(detonation -> detonation.distanceSqr));
+	private final Deque<IncrementalExplosion> running = new ArrayDeque<>();
+	private final List<Detonation> coalescing = new ArrayList<>();
+	private final Deque<long[]> relights = new ArrayDeque<>();
+	private int relightIndex;
+
+	private ExplosionScheduler(ServerLevel level) {
+		this.level = level;
+	}
+
+	/**
+	 * Gets the ExplosionScheduler of the given level, creating it if there is none yet.
+	 * @param level  the level
+	 * @return the ExplosionScheduler
+	 */
+	public static ExplosionScheduler get(ServerLevel level) {
+		return SCHEDULERS.computeIfAbsent(level, ExplosionScheduler::new);
+	}
+
+	/**
+	 * Gets the ExplosionScheduler of the given level if it has anything to do.
+	 * @param level  the level
+	 * @return the ExplosionScheduler or null
+	 */
+	@Nullable
+	public static ExplosionScheduler getIfPresent(ServerLevel level) {
+		return SCHEDULERS.get(level);
+	}
+
+	/**
+	 * Detonates an explosive through the {@link ExplosionScheduler} of its level if scheduled explosions or explosion coalescing are enabled in the config,
+	 * otherwise right away.
+	 * @param level  the level of the explosive
+	 * @param entity  the explosive
+	 * @param effect  the {@link PrimedTNTEffect} the explosive detonates with
+	 */
+	public static void schedule(ServerLevel level, IExplosiveEntity entity, PrimedTNTEffect effect) {
+		if(LuckyTNTLibConfigValues.EXPLOSION_COALESCING_DISTANCE.get() > 0 && effect.canCoalesce()) {
+			get(level).coalescing.add(new Detonation(entity, effect, level.getGameTime()));
+		}
+		else if(LuckyTNTLibConfigValues.SCHEDULED_EXPLOSIONS.get()) {
+			get(level).detonations.add(new Detonation(entity, effect, level.getGameTime()));
+		}
+		else {
+			effect.detonate(entity);
+		}
+	}
+
+	/**
+	 * Adds an explosion to the incremental explosions running in this level.
+	 * @param explosion  the IncrementalExplosion
+	 */
+	void start(IncrementalExplosion explosion) {
+		running.add(explosion);
+	}
+
+	/**
+	 * Schedules light checks at the given positions, which are run from the highest position to the lowest over the following ticks.
+	 * @param positions  the positions as longs, see {@link BlockPos#asLong()}
+	 */
+	void relight(long[] positions) {
+		if(positions.length > 0) {
+			LongArrays.quickSort(positions, (pos, other) -> Integer.compare(BlockPos.getY(other), BlockPos.getY(pos)));
+			relights.add(positions);
+		}
+	}
+
+	/**
+	 * @return the number of explosives waiting to be detonated
+	 */
+	public int getQueueDepth() {
+		return detonations.size();
+	}
+
+	/**
+	 * @return the number of incremental explosions that have not finished yet
+	 */
+	public int getRunningCount() {
+		return running.size();
+	}
+
+	/**
+	 * @return the number of deferred light checks that have not been run yet
+	 */
+	public int getLightCheckCount() {
+		int count = -relightIndex;
+		for(long[] positions : relights) {
+			count += positions.length;
+		}
+		return count;
+	}
+
+	/**
+	 * Detonates scheduled explosives and continues incremental explosions of the given level until the time budget of this tick is used up.
+	 * @param level  the level
+	 */
+	public static void tickLevel(ServerLevel level) {
+		ExplosionScheduler scheduler = SCHEDULERS.get(level);
+		if(scheduler != null) {
+			scheduler.tick();
+			if(scheduler.detonations.isEmpty() && scheduler.running.isEmpty() && scheduler.coalescing.isEmpty() && scheduler.relights.isEmpty()) {
+				SCHEDULERS.remove(level);
+			}
+		}
+	}
+
+	/**
+	 * Finishes everything the scheduler of the given level still has to do and drops it, which is needed once the level is unloaded.
+	 * Held back and scheduled explosives are detonated and incremental explosions are run to their end right away,
+	 * so that no explosive disappears without exploding and no crater is left half done when the level is saved.
+	 * @param level  the level
+	 */
+	public static void clearLevel(Level level) {
+		ExplosionScheduler scheduler = SCHEDULERS.get(level);
+		if(scheduler != null) {
+			scheduler.flush();
+			SCHEDULERS.remove(level);
+		}
+	}
+
+	/**
+	 * Detonates all explosives and finishes all incremental explosions and light checks without regard to the time budget,
+	 * including those that are added by the detonations themselves.
+	 */
+	private void flush() {
+		while(!detonations.isEmpty() || !running.isEmpty() || !coalescing.isEmpty()) {
+			if(!coalescing.isEmpty()) {
+				coalesce();
+			}
+			while(!detonations.isEmpty()) {
+				detonations.poll().detonate();
+			}
+			while(!running.isEmpty()) {
+				if(running.peek().tick(Long.MAX_VALUE)) {
+					running.poll();
+				}
+			}
+		}
+		relight(Long.MAX_VALUE);
+	}
+
+	private void tick() {
+		if(!coalescing.isEmpty()) {
+			coalesce();
+		}
+		long deadline = System.nanoTime() + (long)(LuckyTNTLibConfigValues.EXPLOSION_TICK_BUDGET.get() * 1000000);
+		if(!detonations.isEmpty()) {
+			List<Detonation> waiting = new ArrayList<>(detonations);
+			detonations.clear();
+			for(Detonation detonation : waiting) {
+				detonation.updatePriority(level);
+			}
+			detonations.addAll(waiting);
+			do {
+				detonations.poll().detonate();
+			}
+			while(!detonations.isEmpty() && System.nanoTime() < deadline);
+			long gameTime = level.getGameTime();
+			List<Detonation> overdue = new ArrayList<>();
+			for(Detonation detonation : detonations) {
+				if(gameTime - detonation.scheduledTick >= MAX_WAITING_TICKS) {
+					overdue.add(detonation);
+				}
+			}
+			detonations.removeAll(overdue);
+			for(Detonation detonation : overdue) {
+				detonation.detonate();
+			}
+		}
+		while(!running.isEmpty()) {
+			if(running.peek().tick(deadline)) {
+				running.poll();
+			}
+			if(System.nanoTime() >= deadline) {
+				break;
+			}
+		}
+		if(!relights.isEmpty()) {
+			relight(deadline);
+		}
+	}
+
+	/**
+	 * Runs deferred light checks until all have been run or the deadline has passed.
+	 */
+	private void relight(long deadline) {
+		LevelLightEngine lightEngine = level.getChunkSource().getLightEngine();
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		int checks = 0;
+		while(!relights.isEmpty()) {
+			long[] positions = relights.peek();
+			while(relightIndex < positions.length) {
+				lightEngine.checkBlock(pos.set(positions[relightIndex++]));
+				if(++checks % LIGHT_CHECKS_PER_CHECK == 0 && System.nanoTime() >= deadline) {
+					return;
+				}
+			}
+			relights.poll();
+			relightIndex = 0;
+		}
+	}
+
+	/**
+	 * Groups the explosives held back in this tick by their effect and their distance to the first explosive of a group,
+	 * then schedules or detonates every group.
+	 */
+	private void coalesce() {
+		double maxDistance = LuckyTNTLibConfigValues.EXPLOSION_COALESCING_DISTANCE.get();
+		List<Detonation> groups = new ArrayList<>();
+		for(Detonation detonation : coalescing) {
+			Detonation group = null;
+			for(Detonation other : groups) {
+				if(other.effect == detonation.effect && other.entity.getPos().distanceToSqr(detonation.entity.getPos()) <= maxDistance * maxDistance) {
+					group = other;
+					break;
+				}
+			}
+			if(group == null) {
+				groups.add(detonation);
+			}
+			else {
+				group.coalesce(detonation.entity);
+			}
+		}
+		coalescing.clear();
+		for(Detonation group : groups) {
+			if(LuckyTNTLibConfigValues.SCHEDULED_EXPLOSIONS.get()) {
+				detonations.add(group);
+			}
+			else {
+				group.detonate();
+			}
+		}
+	}
+
+	private static class Detonation {
+
+		private final IExplosiveEntity entity;
+		private final PrimedTNTEffect effect;
+		private final long scheduledTick;
+		@Nullable private List<IExplosiveEntity> coalesced;
+		private boolean observed;
+		private double distanceSqr;
+
+		private Detonation(IExplosiveEntity entity, PrimedTNTEffect effect, long scheduledTick) {
+			this.entity = entity;
+			this.effect = effect;
+			this.scheduledTick = scheduledTick;
+		}
+
+		/**
+		 * Finds the player closest to the explosive and whether or not the explosive is within the view distance of any player.
+		 */
+		private void updatePriority(ServerLevel level) {
+			Vec3 pos = entity.getPos();
+			int viewDistance = level.getServer().getPlayerList().getViewDistance() * 16;
+			distanceSqr = Double.MAX_VALUE;
+			observed = false;
+			for(ServerPlayer player : level.players()) {
+				double offX = player.getX() - pos.x;
+				double offZ = player.getZ() - pos.z;
+				distanceSqr = Math.min(distanceSqr, player.distanceToSqr(pos));
+				if(Math.abs(offX) <= viewDistance && Math.abs(offZ) <= viewDistance) {
+					observed = true;
+				}
+			}
+		}
+
+		/**
+		 * Adds an explosive to be detonated together with the explosive of this Detonation.
+		 */
+		private void coalesce(IExplosiveEntity other) {
+			if(coalesced == null) {
+				coalesced = new ArrayList<>();
+				coalesced.add(entity);
+			}
+			coalesced.add(other);
+		}
+
+		private void detonate() {
+			if(coalesced == null) {
+				effect.detonate(entity);
+			}
+			else {
+				effect.detonateCoalesced(coalesced);
+			}
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package luckytntlib.util.explosions;
+
+import javax.annotation.Nullable;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.material.FluidState;
+
+/**
+ * An ExplosionSnapshot is an immutable copy of the blocks of all loaded chunk sections within a sphere around an explosion.
+ * <p>
+ * The block states of every section that is not empty are copied once on the server thread,
+ * after which any number of threads can shoot explosion vectors through the snapshot at the same time using their own {@link ExplosionSnapshot.Reader}.
+ * Sections that only contain air, everything above the highest block of a chunk and everything outside of the sphere or of loaded chunks is treated as air,
+ * just like the {@link ChunkSectionCursor} treats such areas as empty.
+ * <p>
+ * As a {@link BlockGetter} the snapshot is also passed to the {@link ImprovedExplosion#damageCalculator}, which never sees block entities.
+ */
+public class ExplosionSnapshot implements BlockGetter {
+
+	private static final BlockState VOID_AIR = Blocks.VOID_AIR.defaultBlockState();
+	private static final BlockState AIR = Blocks.AIR.defaultBlockState();
+
+	private final int minBuildHeight, maxBuildHeight;
+	private final int minChunkX, minChunkZ, sizeX, sizeZ;
+	private final int minSection, sectionCount;
+	private final int minY, maxY;
+	private final boolean[] loaded;
+	private final int[] surfaces;
+	private final PalettedContainer<BlockState>[] sections;
+
+	/**
+	 * Copies the blocks around an explosion
+	 * @implNote must be called on the thread owning the level
+	 * @param level  the level
+	 * @param x  the x center position
+	 * @param y  the y center position
+	 * @param z  the z center position
+	 * @param radius  the distance from the center up to which blocks are copied
+	 */
+	@SuppressWarnings("unchecked")
+	public ExplosionSnapshot(Level level, double x, double y, double z, double radius) {
+		minBuildHeight = level.getMinBuildHeight();
+		maxBuildHeight = level.getMaxBuildHeight();
+		minChunkX = SectionPos.blockToSectionCoord(x - radius);
+		minChunkZ = SectionPos.blockToSectionCoord(z - radius);
+		sizeX = SectionPos.blockToSectionCoord(x + radius) - minChunkX + 1;
+		sizeZ = SectionPos.blockToSectionCoord(z + radius) - minChunkZ + 1;
+		minSection = SectionPos.blockToSectionCoord(Math.max(y - radius, minBuildHeight));
+		sectionCount = Math.max(0, SectionPos.blockToSectionCoord(Math.min(y + radius, maxBuildHeight - 1)) - minSection + 1);
+		minY = SectionPos.sectionToBlockCoord(minSection);
+		maxY = minY + sectionCount * 16;
+		loaded = new boolean[sizeX * sizeZ];
+		surfaces = new int[sizeX * sizeZ];
+		sections = new PalettedContainer[sizeX * sizeZ * sectionCount];
+		double radiusSqr = radius * radius;
+		for(int offX = 0; offX < sizeX; offX++) {
+			for(int offZ = 0; offZ < sizeZ; offZ++) {
+				int column = offX * sizeZ + offZ;
+				int chunkX = minChunkX + offX;
+				int chunkZ = minChunkZ + offZ;
+				LevelChunk chunk = level.getChunkSource().getChunkNow(chunkX, chunkZ);
+				if(chunk == null) {
+					continue;
+				}
+				int surface = minBuildHeight;
+				for(int blockX = 0; blockX < 16; blockX++) {
+					for(int blockZ = 0; blockZ < 16; blockZ++) {
+						surface = Math.max(surface, chunk.getHeight(Heightmap.Types.WORLD_SURFACE, blockX, blockZ) + 1);
+					}
+				}
+				loaded[column] = true;
+				surfaces[column] = surface;
+				for(int sectionY = 0; sectionY < sectionCount; sectionY++) {
+					int sectionMinY = minY + sectionY * 16;
+					if(sectionMinY >= surface || getDistanceSqr(x, y, z, chunkX << 4, sectionMinY, chunkZ << 4) > radiusSqr) {
+						continue;
+					}
+					LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(minSection + sectionY));
+					if(!section.hasOnlyAir()) {
+						sections[column * sectionCount + sectionY] = section.getStates().copy();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether or not any copied state has an explosion resistance that depends on more than the state itself,
+	 * see {@link ExplosionResistanceTable#DYNAMIC}. Only the palettes of the sections are looked at.
+	 * @return whether or not explosion vectors shot through this snapshot would have to call the resistance hooks of a block or fluid
+	 */
+	public boolean hasDynamicStates() {
+		for(PalettedContainer<BlockState> section : sections) {
+			if(section != null && section.maybeHas(state -> Float.isNaN(ExplosionResistanceTable.getResistance(state)))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Calculates the squared distance between a point and the closest point of the section starting at the given block position.
+	 */
+	private static double getDistanceSqr(double x, double y, double z, int minX, int minY, int minZ) {
+		double distX = Math.max(0, Math.max(minX - x, x - (minX + 16)));
+		double distY = Math.max(0, Math.max(minY - y, y - (minY + 16)));
+		double distZ = Math.max(0, Math.max(minZ - z, z - (minZ + 16)));
+		return distX * distX + distY * distY + distZ * distZ;
+	}
+
+	/**
+	 * @return the index of the chunk column containing the given position or -1 if it is not part of the snapshot
+	 */
+	private int getColumn(int x, int z) {
+		int offX = SectionPos.blockToSectionCoord(x) - minChunkX;
+		int offZ = SectionPos.blockToSectionCoord(z) - minChunkZ;
+		if(offX < 0 || offX >= sizeX || offZ < 0 || offZ >= sizeZ) {
+			return -1;
+		}
+		return offX * sizeZ + offZ;
+	}
+
+	@Nullable
+	private PalettedContainer<BlockState> getSection(int column, int y) {
+		if(column < 0 || y < minY || y >= maxY) {
+			return null;
+		}
+		return sections[column * sectionCount + ((y - minY) >> 4)];
+	}
+
+	/**
+	 * Gets the {@link BlockState} at the given position
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 * @return the BlockState
+	 */
+	public BlockState getBlockState(int x, int y, int z) {
+		if(y < minBuildHeight || y >= maxBuildHeight) {
+			return VOID_AIR;
+		}
+		PalettedContainer<BlockState> section = getSection(getColumn(x, z), y);
+		return section == null ? AIR : section.get(x & 15, y & 15, z & 15);
+	}
+
+	@Override
+	public BlockState getBlockState(BlockPos pos) {
+		return getBlockState(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	@Override
+	public FluidState getFluidState(BlockPos pos) {
+		return getBlockState(pos).getFluidState();
+	}
+
+	@Override
+	@Nullable
+	public BlockEntity getBlockEntity(BlockPos pos) {
+		return null;
+	}
+
+	@Override
+	public int getHeight() {
+		return maxBuildHeight - minBuildHeight;
+	}
+
+	@Override
+	public int getMinBuildHeight() {
+		return minBuildHeight;
+	}
+
+	/**
+	 * Creates a new reader of this snapshot. Readers are cheap, but every thread needs its own.
+	 * @return the Reader
+	 */
+	public Reader reader() {
+		return new Reader();
+	}
+
+	/**
+	 * A Reader reads the blocks of an {@link ExplosionSnapshot} for one thread.
+	 */
+	public class Reader implements IExplosionBlockReader {
+
+		private int emptyMinY, emptyMaxY;
+
+		private Reader() {
+		}
+
+		@Override
+		public BlockState getBlockState(int x, int y, int z) {
+			return ExplosionSnapshot.this.getBlockState(x, y, z);
+		}
+
+		@Override
+		public boolean isInEmptyArea(int x, int y, int z) {
+			if(y < minBuildHeight || y >= maxBuildHeight) {
+				return false;
+			}
+			int column = getColumn(x, z);
+			if(column < 0 || !loaded[column]) {
+				emptyMinY = minBuildHeight;
+				emptyMaxY = maxBuildHeight;
+				return true;
+			}
+			int surface = surfaces[column];
+			if(y >= surface || y >= maxY) {
+				emptyMinY = Math.min(surface, maxY);
+				emptyMaxY = maxBuildHeight;
+				return true;
+			}
+			if(y < minY) {
+				emptyMinY = minBuildHeight;
+				emptyMaxY = minY;
+				return true;
+			}
+			if(getSection(column, y) == null) {
+				emptyMinY = minY + ((y - minY) & ~15);
+				emptyMaxY = emptyMinY + 16;
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public int getEmptyMinY() {
+			return emptyMinY;
+		}
+
+		@Override
+		public int getEmptyMaxY() {
+			return emptyMaxY;
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package luckytntlib.util.explosions;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+
+import luckytntlib.config.LuckyTNTLibConfigValues;
+import luckytntlib.util.explosions.ImprovedExplosion.IRayHit;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.material.FluidState;
+
+/**
+ * An ExplosionWavefront finds the blocks of an {@link ImprovedExplosion} with the {@link ExplosionEngine#WAVEFRONT} engine
+ * and refines the edges of craters for the {@link ExplosionEngine#HIERARCHICAL} engine, see {@link ExplosionBrickWavefront}.
+ * <p>
+ * The energy of the explosion starts at the average length of an explosion vector and spreads out from the center block like a Dijkstra search:
+ * the block with the most energy left is always visited next, so every block is visited at most once and with the most energy any path can bring to it.
+ * Moving on from a block to one of its 26 neighbours costs as much as an explosion vector would lose travelling that far through the block,
+ * both by its steps and by the explosion resistance of the block, and a block is destroyed if the energy arriving at it exceeds its explosion resistance.
+ * The energy of blocks is kept in a binary heap of primitive arrays.
+ * <p>
+ * The search can pause at a deadline and continue later, which is used by {@link IncrementalExplosion}.
+ */
+class ExplosionWavefront {
+
+	private static final int BLOCKS_PER_CHECK = 256;
+	static final int[] OFFSET_X = new int[26], OFFSET_Y = new int[26], OFFSET_Z = new int[26];
+	/**
+	 * The length of the way to each of the 26 neighbours of a block, ignoring the x, z and y strength
+	 */
+	static final float[] LENGTH = new float[26];
+
+	static {
+		int index = 0;
+		for(int x = -1; x <= 1; x++) {
+			for(int y = -1; y <= 1; y++) {
+				for(int z = -1; z <= 1; z++) {
+					if(x != 0 || y != 0 || z != 0) {
+						OFFSET_X[index] = x;
+						OFFSET_Y[index] = y;
+						OFFSET_Z[index] = z;
+						LENGTH[index] = (float)Math.sqrt(x * x + y * y + z * z);
+						index++;
+					}
+				}
+			}
+		}
+	}
+
+	final ImprovedExplosion explosion;
+	final IExplosionBlockReader reader;
+	private final BlockGetter blockGetter;
+	private final float resistanceImpact;
+	final float randomVecLength;
+	final boolean isStrongExplosion;
+	private final long stream;
+	final int minY, maxY;
+	/**
+	 * The energy lost by leaving a block towards each of its neighbours, without explosion resistance
+	 */
+	final float[] travelCost = new float[26];
+	/**
+	 * The number of steps an explosion vector would need to cross a block, by which the explosion resistance is multiplied
+	 */
+	private final float stepsPerBlock;
+	/**
+	 * The energy the wavefront starts with at the center block
+	 */
+	final float energy;
+	final BlockPos center;
+	private final double reach;
+	final ExplosionBlockSet visited;
+	private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+	private final EnergyHeap heap = new EnergyHeap();
+	@Nullable
+	private BlockState lastState;
+	private float lastResistance;
+
+	ExplosionWavefront(ImprovedExplosion explosion, IExplosionBlockReader reader, BlockGetter blockGetter, float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean isStrongExplosion, long stream) {
+		this.explosion = explosion;
+		this.reader = reader;
+		this.blockGetter = blockGetter;
+		this.resistanceImpact = resistanceImpact;
+		this.randomVecLength = randomVecLength;
+		this.isStrongExplosion = isStrongExplosion;
+		this.stream = stream;
+		minY = explosion.level.getMinBuildHeight();
+		maxY = explosion.level.getMaxBuildHeight();
+		double performanceFactor = LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get();
+		double stepLength = performanceFactor * 1.5f - 0.225f;
+		for(int i = 0; i < 26; i++) {
+			double x = OFFSET_X[i] / xzStrength, y = OFFSET_Y[i] / yStrength, z = OFFSET_Z[i] / xzStrength;
+			travelCost[i] = (float)(Math.sqrt(x * x + y * y + z * z) / performanceFactor * stepLength);
+		}
+		stepsPerBlock = (float)(1d / performanceFactor);
+		energy = explosion.size * (0.7f + 0.3f * Math.max(randomVecLength, 0));
+		reach = energy / stepLength * performanceFactor * Math.max(xzStrength, yStrength) + 2;
+		center = BlockPos.containing(explosion.posX, explosion.posY, explosion.posZ);
+		visited = new ExplosionBlockSet(explosion.level, center, reach);
+		if(center.getY() >= minY && center.getY() < maxY) {
+			heap.push(center.asLong(), energy);
+		}
+	}
+
+	/**
+	 * @return the greatest distance from the center a block visited by this wavefront can have
+	 */
+	double getReach() {
+		return reach;
+	}
+
+	/**
+	 * Spreads the wavefront until it has run out of energy or the deadline has passed.
+	 * @param rayHit  receives the blocks destroyed by the explosion
+	 * @param deadline  the time in the form of {@link System#nanoTime()} at which to pause
+	 * @return whether or not the wavefront has run out of energy
+	 */
+	boolean run(IRayHit rayHit, long deadline) {
+		int visits = 0;
+		while(!heap.isEmpty()) {
+			float energy = heap.peekEnergy();
+			long key = heap.peekKey();
+			heap.pop();
+			int x = BlockPos.getX(key), y = BlockPos.getY(key), z = BlockPos.getZ(key);
+			if(!visited.add(x, y, z)) {
+				continue;
+			}
+			float jitter = Math.max(1f + (ExplosionRandom.getRayFloat(stream, key) - 0.5f) * 0.6f * randomVecLength, 0f);
+			BlockState blockState = reader.getBlockState(pos.set(x, y, z));
+			float loss = getLoss(pos, blockState) * jitter;
+			hitBlock(pos, blockState, energy - loss, rayHit);
+			if(energy > loss) {
+				for(int i = 0; i < 26; i++) {
+					int nextY = y + OFFSET_Y[i];
+					float next = energy - travelCost[i] * jitter - LENGTH[i] * loss;
+					if(next > 0 && nextY >= minY && nextY < maxY && !visited.contains(x + OFFSET_X[i], nextY, z + OFFSET_Z[i])) {
+						heap.push(BlockPos.asLong(x + OFFSET_X[i], nextY, z + OFFSET_Z[i]), next);
+					}
+				}
+			}
+			if(++visits % BLOCKS_PER_CHECK == 0 && System.nanoTime() >= deadline) {
+				return heap.isEmpty();
+			}
+		}
+		heap.trim();
+		return true;
+	}
+
+	/**
+	 * Adds a block to the wavefront, unless it has already been visited.
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 * @param energy  the energy arriving at the block
+	 */
+	void seed(int x, int y, int z, float energy) {
+		if(energy > 0 && y >= minY && y < maxY && !visited.contains(x, y, z)) {
+			heap.push(BlockPos.asLong(x, y, z), energy);
+		}
+	}
+
+	/**
+	 * Passes a block to the rayHit if the energy arriving at it is enough to destroy it.
+	 * @param pos  the position of the block
+	 * @param blockState  the state of the block
+	 * @param energy  the energy left after the explosion resistance of the block has been taken into account
+	 * @param rayHit  receives the block if it is destroyed
+	 */
+	void hitBlock(BlockPos pos, BlockState blockState, float energy, IRayHit rayHit) {
+		if(isStrongExplosion && !blockState.getFluidState().isEmpty()) {
+			rayHit.hit(pos, blockState, Math.sqrt(pos.distToCenterSqr(explosion.posX, explosion.posY, explosion.posZ)));
+		}
+		else if(energy > 0 && !blockState.isAir() && (explosion.alwaysExplodes || explosion.damageCalculator.shouldBlockExplode(explosion, blockGetter, pos, blockState, energy))) {
+			rayHit.hit(pos, blockState, Math.sqrt(pos.distToCenterSqr(explosion.posX, explosion.posY, explosion.posZ)));
+		}
+	}
+
+	/**
+	 * Gets the energy the wavefront loses per block of way through a block because of the explosion resistance of the block.
+	 * @param pos  the position of the block
+	 * @param blockState  the state of the block
+	 * @return the energy lost, which is 0 for blocks without explosion resistance and fluids in strong explosions
+	 */
+	float getLoss(BlockPos pos, BlockState blockState) {
+		FluidState fluidState = blockState.getFluidState();
+		if(isStrongExplosion && !fluidState.isEmpty()) {
+			return 0;
+		}
+		float resistance = getResistance(blockState);
+		if(Float.isNaN(resistance)) {
+			Optional<Float> explosionResistance = explosion.damageCalculator.getBlockExplosionResistance(explosion, blockGetter, pos, blockState, fluidState);
+			return explosionResistance.isPresent() ? (explosionResistance.get() + 0.3f) * 0.3f * resistanceImpact * stepsPerBlock : 0;
+		}
+		return resistance != ExplosionResistanceTable.NO_RESISTANCE ? (resistance + 0.3f) * 0.3f * resistanceImpact * stepsPerBlock : 0;
+	}
+
+	/**
+	 * Gets the explosion resistance of a state from the {@link ExplosionResistanceTable} if the {@link ImprovedExplosion#damageCalculator} of the explosion allows it.
+	 * Remembers the last state, as neighbouring blocks are often of the same kind.
+	 * @return the explosion resistance, {@link ExplosionResistanceTable#NO_RESISTANCE} or {@link ExplosionResistanceTable#DYNAMIC} if the calculator has to be used
+	 */
+	private float getResistance(BlockState state) {
+		if(!explosion.tableResistance) {
+			return ExplosionResistanceTable.DYNAMIC;
+		}
+		if(state != lastState) {
+			lastResistance = ExplosionResistanceTable.getResistance(state);
+			lastState = state;
+		}
+		return lastResistance;
+	}
+
+	/**
+	 * Creates the wavefront for the engine of a pipeline.
+	 * @param explosion  the explosion
+	 * @param pipeline  the ExplosionPipeline, whose engine is {@link ExplosionEngine#WAVEFRONT} or {@link ExplosionEngine#HIERARCHICAL}
+	 * @param stream  the seed of the stream of random values, drawn from the {@link ImprovedExplosion#random}
+	 * @return the ExplosionWavefront
+	 */
+	static ExplosionWavefront of(ImprovedExplosion explosion, ExplosionPipeline pipeline, long stream) {
+		if(pipeline.engine == ExplosionEngine.HIERARCHICAL) {
+			return new ExplosionBrickWavefront(explosion, explosion.cursor, explosion.level, pipeline.xzStrength, pipeline.yStrength, pipeline.resistanceImpact, pipeline.randomVecLength, pipeline.isStrongExplosion, stream);
+		}
+		return new ExplosionWavefront(explosion, explosion.cursor, explosion.level, pipeline.xzStrength, pipeline.yStrength, pipeline.resistanceImpact, pipeline.randomVecLength, pipeline.isStrongExplosion, stream);
+	}
+
+	/**
+	 * A binary heap of positions kept in primitive arrays, which always has the position with the most energy at its root.
+	 */
+	static final class EnergyHeap {
+
+		private float[] energies = new float[256];
+		private long[] keys = new long[256];
+		private int size;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		/**
+		 * @return the energy of the root
+		 */
+		float peekEnergy() {
+			return energies[0];
+		}
+
+		/**
+		 * @return the position of the root
+		 */
+		long peekKey() {
+			return keys[0];
+		}
+
+		/**
+		 * Adds a position to the heap.
+		 */
+		void push(long key, float energy) {
+			if(size == energies.length) {
+				energies = Arrays.copyOf(energies, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			int index = size++;
+			while(index > 0) {
+				int parent = (index - 1) >>> 1;
+				if(energies[parent] >= energy) {
+					break;
+				}
+				energies[index] = energies[parent];
+				keys[index] = keys[parent];
+				index = parent;
+			}
+			energies[index] = energy;
+			keys[index] = key;
+		}
+
+		/**
+		 * Removes the root of the heap.
+		 */
+		void pop() {
+			float energy = energies[--size];
+			long key = keys[size];
+			int index = 0;
+			int half = size >>> 1;
+			while(index < half) {
+				int child = 2 * index + 1;
+				if(child + 1 < size && energies[child + 1] > energies[child]) {
+					child++;
+				}
+				if(energy >= energies[child]) {
+					break;
+				}
+				energies[index] = energies[child];
+				keys[index] = keys[child];
+				index = child;
+			}
+			energies[index] = energy;
+			keys[index] = key;
+		}
+
+		/**
+		 * Releases the arrays of an empty heap.
+		 */
+		void trim() {
+			energies = new float[1];
+			keys = new long[1];
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package luckytntlib.util.explosions;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import luckytntlib.config.LuckyTNTLibConfigValues;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.material.Fluid;
+import net.minecraft.world.level.material.FluidState;
+
+/**
+ * A FluidSettler fills the crater of an explosion with the fluids around it in a single pass, instead of letting them flow in over hundreds of ticks.
+ * <p>
+ * Every block of the crater that is empty after the explosion is a cell, as is all air connected to the crater within the blast radius that is not higher than the highest source,
+ * like caves the explosion opened up. A source next to or above a cell lets its fluid in up to the height of the source,
+ * if the fluid can form new sources like water does. Starting with the highest source, the fluid floods all connected cells that are not higher than the source
+ * and have not been filled yet, so every part of the crater is filled up to the highest level that reaches it.
+ * If the flooded cells border air or other blocks the fluid could wash away below or beside them, the fluid would drain through them,
+ * so none of those cells are filled and the fluid is left to flow in on its own, as are fluids that cannot form new sources, like lava.
+ * <p>
+ * All cells are filled with sources at once through a {@link BlockWriteBuffer} with boundary updates.
+ * Only filled cells the fluid could still flow out of schedule a fluid tick, all others already hold the fluid they would end up with.
+ */
+final class FluidSettler {
+
+	private static final Direction[] INFLOW = {Direction.UP, Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST};
+	private static final Direction[] OUTFLOW = {Direction.DOWN, Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST};
+
+	private final ImprovedExplosion explosion;
+	private final LongOpenHashSet cells = new LongOpenHashSet();
+	private double radiusSqr;
+
+	/**
+	 * Creates a new FluidSettler
+	 * @param explosion  the explosion whose crater is filled
+	 */
+	FluidSettler(ImprovedExplosion explosion) {
+		this.explosion = explosion;
+	}
+
+	/**
+	 * Adds a block of the crater, which only becomes a cell if it is empty.
+	 * @param pos  the position of the block, which may be mutable
+	 */
+	void add(BlockPos pos) {
+		if(explosion.cursor.getBlockState(pos).isAir()) {
+			cells.add(pos.asLong());
+			radiusSqr = Math.max(radiusSqr, pos.distToCenterSqr(explosion.posX, explosion.posY, explosion.posZ));
+		}
+	}
+
+	/**
+	 * Fills the cells added so far and writes the fluids to the level.
+	 */
+	void settle() {
+		if(cells.isEmpty() || explosion.level.isClientSide) {
+			return;
+		}
+		List<Inflow> inflows = findInflows();
+		if(inflows.isEmpty()) {
+			cells.clear();
+			return;
+		}
+		if(addAir(inflows.stream().mapToInt(Inflow::height).max().getAsInt())) {
+			inflows = findInflows();
+		}
+		inflows.sort(Comparator.comparingInt(Inflow::height).reversed());
+		Long2ObjectOpenHashMap<Fluid> filled = new Long2ObjectOpenHashMap<>();
+		Long2IntOpenHashMap drained = new Long2IntOpenHashMap();
+		drained.defaultReturnValue(Integer.MIN_VALUE);
+		LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+		LongArrayList flooded = new LongArrayList();
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		for(Inflow inflow : inflows) {
+			if(filled.containsKey(inflow.cell) || drained.get(inflow.cell) == inflow.height) {
+				continue;
+			}
+			LongOpenHashSet reached = new LongOpenHashSet();
+			boolean drains = false;
+			reached.add(inflow.cell);
+			queue.enqueue(inflow.cell);
+			while(!queue.isEmpty()) {
+				long cell = queue.dequeueLong();
+				flooded.add(cell);
+				drains = drains || drains(cell, inflow.fluid, pos);
+				for(Direction direction : Direction.values()) {
+					long next = BlockPos.offset(cell, direction);
+					if(BlockPos.getY(next) <= inflow.height && cells.contains(next) && !filled.containsKey(next) && reached.add(next)) {
+						queue.enqueue(next);
+					}
+				}
+			}
+			for(int i = 0; i < flooded.size(); i++) {
+				if(drains) {
+					drained.put(flooded.getLong(i), inflow.height);
+				}
+				else {
+					filled.put(flooded.getLong(i), inflow.fluid);
+				}
+			}
+			flooded.clear();
+		}
+		cells.clear();
+		if(!filled.isEmpty()) {
+			write(filled);
+		}
+	}
+
+	/**
+	 * Adds all air connected to the cells that is within the blast radius and not higher than the given height as cells.
+	 * @return whether or not any cell has been added
+	 */
+	private boolean addAir(int maxHeight) {
+		LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+		for(long cell : cells) {
+			queue.enqueue(cell);
+		}
+		boolean added = false;
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		while(!queue.isEmpty()) {
+			long cell = queue.dequeueLong();
+			for(Direction direction : Direction.values()) {
+				pos.set(cell).move(direction);
+				if(pos.getY() <= maxHeight && pos.distToCenterSqr(explosion.posX, explosion.posY, explosion.posZ) <= radiusSqr && !cells.contains(pos.asLong()) && explosion.cursor.getBlockState(pos).isAir()) {
+					cells.add(pos.asLong());
+					queue.enqueue(pos.asLong());
+					added = true;
+				}
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * @return whether or not the given fluid could drain from a cell into one of the blocks next to or below it that are not cells
+	 */
+	private boolean drains(long cell, Fluid fluid, BlockPos.MutableBlockPos pos) {
+		for(Direction direction : OUTFLOW) {
+			pos.set(cell).move(direction);
+			if(cells.contains(pos.asLong())) {
+				continue;
+			}
+			BlockState state = explosion.cursor.getBlockState(pos);
+			if(state.getFluidState().isEmpty() && state.canBeReplaced(fluid)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the highest source next to or above every cell that can let its fluid into the crater.
+	 */
+	private List<Inflow> findInflows() {
+		List<Inflow> inflows = new ArrayList<>();
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		for(long cell : cells) {
+			Inflow inflow = null;
+			for(Direction direction : INFLOW) {
+				pos.set(cell).move(direction);
+				if(cells.contains(pos.asLong())) {
+					continue;
+				}
+				FluidState fluidState = explosion.cursor.getBlockState(pos).getFluidState();
+				if(fluidState.isSource() && (inflow == null || pos.getY() > inflow.height) && fluidState.canConvertToSource(explosion.level, pos)) {
+					inflow = new Inflow(cell, fluidState.getType(), pos.getY());
+				}
+			}
+			if(inflow != null) {
+				inflows.add(inflow);
+			}
+		}
+		return inflows;
+	}
+
+	private void write(Long2ObjectOpenHashMap<Fluid> filled) {
+		BlockWriteBuffer buffer = new BlockWriteBuffer(explosion.level, LuckyTNTLibConfigValues.DEFERRED_EXPLOSION_LIGHTING.get(), true);
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		for(Long2ObjectMap.Entry<Fluid> entry : filled.long2ObjectEntrySet()) {
+			Fluid fluid = entry.getValue();
+			buffer.setBlock(pos.set(entry.getLongKey()), fluid.defaultFluidState().createLegacyBlock(), canFlowOut(entry.getLongKey(), fluid, filled));
+		}
+		buffer.commit();
+	}
+
+	/**
+	 * @return whether or not the fluid of a filled cell could still flow into or mix with one of the blocks next to or below it
+	 */
+	private boolean canFlowOut(long cell, Fluid fluid, Long2ObjectOpenHashMap<Fluid> filled) {
+		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+		for(Direction direction : OUTFLOW) {
+			pos.set(cell).move(direction);
+			Fluid other = filled.get(pos.asLong());
+			if(other != null) {
+				if(!other.isSame(fluid)) {
+					return true;
+				}
+				continue;
+			}
+			BlockState state = explosion.cursor.getBlockState(pos);
+			FluidState fluidState = state.getFluidState();
+			if(state.canBeReplaced(fluid) && !(fluidState.isSource() && fluidState.getType().isSame(fluid))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static record Inflow(long cell, Fluid fluid, int height) {
+	}
+}
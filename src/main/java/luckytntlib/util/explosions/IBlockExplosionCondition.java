@@ -16,7 +16,7 @@ public interface IBlockExplosionCondition {
 	/**
 	 * Decides which blocks are considered to be passed to an {@link IForEachBlockExplosionEffect} or not.
 	 * @param level  the current level
-	 * @param pos  the position of the block
+	 * @param pos  the position of the block, which may be mutable and must be copied if it is kept
 	 * @param state  the state of the block
 	 * @param distance  the distance of the block to the explosion origin
 	 */
@@ -0,0 +1,51 @@
+package luckytntlib.util.explosions;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * An IExplosionBlockReader provides the blocks an {@link ExplosionRayTracer} shoots its explosion vectors through.
+ * <p>
+ * It is implemented by the {@link ChunkSectionCursor}, which reads blocks straight from the level,
+ * and by the readers of an {@link ExplosionSnapshot}, which can be used from any thread.
+ */
+public interface IExplosionBlockReader {
+
+	/**
+	 * Gets the {@link BlockState} at the given position
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 * @return the BlockState
+	 */
+	public BlockState getBlockState(int x, int y, int z);
+	
+	/**
+	 * Gets the {@link BlockState} at the given position
+	 * @param pos  the position
+	 * @return the BlockState
+	 */
+	public default BlockState getBlockState(BlockPos pos) {
+		return getBlockState(pos.getX(), pos.getY(), pos.getZ());
+	}
+	
+	/**
+	 * Checks whether or not the given position lies in an area that is known to contain only air, without reading the block itself.
+	 * If so, the area spans the chunk column of the position from {@link IExplosionBlockReader#getEmptyMinY()} to {@link IExplosionBlockReader#getEmptyMaxY()}.
+	 * @param x  the x position
+	 * @param y  the y position
+	 * @param z  the z position
+	 * @return whether or not the position lies in an empty area
+	 */
+	public boolean isInEmptyArea(int x, int y, int z);
+	
+	/**
+	 * @return the lowest y position of the area found by the last successful {@link IExplosionBlockReader#isInEmptyArea(int, int, int)}
+	 */
+	public int getEmptyMinY();
+	
+	/**
+	 * @return the highest y position, exclusive, of the area found by the last successful {@link IExplosionBlockReader#isInEmptyArea(int, int, int)}
+	 */
+	public int getEmptyMaxY();
+}
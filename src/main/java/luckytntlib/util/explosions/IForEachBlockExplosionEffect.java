@@ -9,6 +9,9 @@ import net.minecraft.world.level.block.state.BlockState;
  * An IForEachEntityExplosionEffect is used to affect individual blocks gotten by an {@link ImprovedExplosion} 
  * or a function of the {@link ExplosionHelper} in different ways.
  * It is usually used as a parameter of a function.
+ * <p>
+ * Effects that place many blocks can collect them in a {@link BlockWriteBuffer}, which writes them all at once when it is committed.
+ * Effects that only replace states with other states can be described by a {@link BlockTransform} instead, which the shapes of the {@link ExplosionHelper} apply section by section.
  */
 @FunctionalInterface
 public interface IForEachBlockExplosionEffect {
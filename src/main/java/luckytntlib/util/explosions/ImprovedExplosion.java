@@ -1,21 +1,19 @@
 package luckytntlib.util.explosions;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.Set;
 
 import javax.annotation.Nullable;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import luckytntlib.config.LuckyTNTLibConfigValues;
 import luckytntlib.util.IExplosiveEntity;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.particles.ParticleTypes;
 import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.sounds.SoundEvent;
 import net.minecraft.sounds.SoundEvents;
-import net.minecraft.util.Mth;
 import net.minecraft.world.damagesource.DamageSource;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.LivingEntity;
@@ -26,11 +24,14 @@ import net.minecraft.world.level.Explosion;
 import net.minecraft.world.level.ExplosionDamageCalculator;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.BaseFireBlock;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
-import net.minecraft.world.level.material.FluidState;
 import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.common.extensions.IForgeBlock;
 import net.minecraftforge.event.ForgeEventFactory;
+import net.minecraftforge.event.level.ExplosionEvent;
 
 /**
  * ImprovedExplosion is an extension of Minecraft's {@link Explosion}.
@@ -44,16 +45,27 @@ public class ImprovedExplosion extends Explosion{
 	public final int size;
 	public final ExplosionDamageCalculator damageCalculator;
 	public final DamageSource damageSource;
-	List<Integer> affectedBlocks = new ArrayList<>();
+	public final ExplosionRandom random;
+	@Nullable ExplosionResult result;
+	@Nullable private ExplosionBlockSet pendingBlocks;
+	@Nullable private BlockWriteBuffer destroyBuffer;
+	@Nullable private Long2ObjectOpenHashMap<Block> bufferedBlocks;
+	final ChunkSectionCursor cursor;
+	final boolean tableResistance, alwaysExplodes;
 	
 	private static ImprovedExplosion dummyExplosion;
+	private static final ClassValue<Boolean> DEFAULT_EXPLODED = new ClassValue<>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return !ExplosionResistanceTable.overrides(type, IForgeBlock.class, "onBlockExploded", BlockState.class, Level.class, BlockPos.class, Explosion.class);
+		}
+	};
 	
 	/**
 	 * Creates a new ImprovedExplosion
-	 * @implNote size must not be greater than 511 in most cases. See the respective doBlockExplosion method
 	 * @param level  the level
 	 * @param position  the center position of the explosion
-	 * @param size  the rough size of the explosion, which must not be greater than 511 in most cases
+	 * @param size  the rough size of the explosion
 	 */
 	public ImprovedExplosion(Level level, Vec3 position, int size) {
 		this(level, null, null, position, size);
@@ -61,11 +73,10 @@ public class ImprovedExplosion extends Explosion{
 	
 	/**
 	 * Creates a new ImprovedExplosion
-	 * @implNote size must not be greater than 511 in most cases. See the respective doBlockExplosion method
 	 * @param level  the level
 	 * @param source  the DamageSource this explosion uses
 	 * @param position  the center position of the explosion
-	 * @param size  the rough size of the explosion, which must not be greater than 511 in most cases
+	 * @param size  the rough size of the explosion
 	 */
 	public ImprovedExplosion(Level level, @Nullable DamageSource source, Vec3 position, int size) {
 		this(level, null, source, position, size);
@@ -73,11 +84,10 @@ public class ImprovedExplosion extends Explosion{
 	
 	/**
 	 * Creates a new ImprovedExplosion
-	 * @implNote size must not be greater than 511 in most cases. See the respective doBlockExplosion method
 	 * @param level  the level
 	 * @param entity  the entity not affected by this explosion. Should be the entity causing the explosion and also an IExplosiveEntity
 	 * @param position  the center position of the explosion
-	 * @param size  the rough size of the explosion, which must not be greater than 511 in most cases
+	 * @param size  the rough size of the explosion
 	 */	
 	public ImprovedExplosion(Level level, @Nullable Entity explodingEntity, Vec3 position, int size) {
 		this(level, explodingEntity, null, position.x, position.y, position.z, size);
@@ -85,12 +95,11 @@ public class ImprovedExplosion extends Explosion{
 	
 	/**
 	 * Creates a new ImprovedExplosion
-	 * @implNote size must not be greater than 511 in most cases. See the respective doBlockExplosion method
 	 * @param level  the level
 	 * @param entity  the entity not affected by this explosion. Should be the entity causing the explosion and also an IExplosiveEntity
 	 * @param source  the DamageSource this explosion uses
 	 * @param position  the center position of the explosion
-	 * @param size  the rough size of the explosion, which must not be greater than 511 in most cases
+	 * @param size  the rough size of the explosion
 	 */	
 	public ImprovedExplosion(Level level, @Nullable Entity explodingEntity, @Nullable DamageSource source, Vec3 position, int size) {
 		this(level, explodingEntity, source, position.x, position.y, position.z, size);
@@ -98,13 +107,12 @@ public class ImprovedExplosion extends Explosion{
 	
 	/**
 	 * Creates a new ImprovedExplosion
-	 * @implNote size must not be greater than 511 in most cases. See the respective doBlockExplosion method
 	 * @param level  the level
 	 * @param entity  the entity not affected by this explosion. Should be the entity causing the explosion and also an IExplosiveEntity
 	 * @param x  the x center position
 	 * @param y  the y center position
 	 * @param z  the z center position
-	 * @param size  the rough size of the explosion, which must not be greater than 511 in most cases
+	 * @param size  the rough size of the explosion
 	 */	
 	public ImprovedExplosion(Level level, @Nullable Entity explodingEntity, double x, double y, double z, int size) {
 		this(level, explodingEntity, null, x, y, z, size);
@@ -112,14 +120,13 @@ public class ImprovedExplosion extends Explosion{
 	
 	/**
 	 * Creates a new ImprovedExplosion
-	 * @implNote size must not be greater than 511 in most cases. See the respective doBlockExplosion method
 	 * @param level  the level
 	 * @param entity  the entity not affected by this explosion. Should be the entity causing the explosion and also an IExplosiveEntity
 	 * @param source  the DamageSource this explosion uses
 	 * @param x  the x center position
 	 * @param y  the y center position
 	 * @param z  the z center position
-	 * @param size  the rough size of the explosion, which must not be greater than 511 in most cases
+	 * @param size  the rough size of the explosion
 	 */	
 	public ImprovedExplosion(Level level, @Nullable Entity explodingEntity, @Nullable DamageSource source, double x, double y, double z, int size) {
 		super(level, explodingEntity, source, null, x, y, z, size, false, BlockInteraction.KEEP, ParticleTypes.EXPLOSION, ParticleTypes.EXPLOSION_EMITTER, SoundEvents.GENERIC_EXPLODE);
@@ -130,11 +137,14 @@ public class ImprovedExplosion extends Explosion{
 		this.size = size;
 		this.damageSource = source == null ? level.damageSources().explosion(this) : source;
 		damageCalculator = explodingEntity == null ? new ExplosionDamageCalculator() : new EntityBasedExplosionDamageCalculator(explodingEntity);
+		cursor = new ChunkSectionCursor(level);
+		tableResistance = ExplosionResistanceTable.supportsResistance(damageCalculator, explodingEntity);
+		alwaysExplodes = ExplosionResistanceTable.alwaysExplodes(damageCalculator, explodingEntity);
+		random = ExplosionRandom.of(level, x, y, z);
 	}
 	
 	/**
 	 * Creates a new ImprovedExplosion
-	 * @implNote size must not be greater than 511 in most cases. See the respective doBlockExplosion method
 	 * @param level  the level
 	 * @param entity  the entity not affected by this explosion. Should be the entity causing the explosion and also an IExplosiveEntity
 	 * @param source  the DamageSource this explosion uses
@@ -142,7 +152,7 @@ public class ImprovedExplosion extends Explosion{
 	 * @param x  the x center position
 	 * @param y  the y center position
 	 * @param z  the z center position
-	 * @param size  the rough size of the explosion, which must not be greater than 511 in most cases
+	 * @param size  the rough size of the explosion
 	 */	
 	public ImprovedExplosion(Level level, @Nullable Entity explodingEntity, @Nullable DamageSource source, SoundEvent sound, double x, double y, double z, int size) {
 		super(level, explodingEntity, source, null, x, y, z, size, false, BlockInteraction.KEEP, ParticleTypes.EXPLOSION, ParticleTypes.EXPLOSION_EMITTER, BuiltInRegistries.SOUND_EVENT.wrapAsHolder(sound));
@@ -153,12 +163,15 @@ public class ImprovedExplosion extends Explosion{
 		this.size = size;
 		this.damageSource = source == null ? level.damageSources().explosion(this) : source;
 		damageCalculator = explodingEntity == null ? new ExplosionDamageCalculator() : new EntityBasedExplosionDamageCalculator(explodingEntity);
+		cursor = new ChunkSectionCursor(level);
+		tableResistance = ExplosionResistanceTable.supportsResistance(damageCalculator, explodingEntity);
+		alwaysExplodes = ExplosionResistanceTable.alwaysExplodes(damageCalculator, explodingEntity);
+		random = ExplosionRandom.of(level, x, y, z);
 	}
 	
 	/**
 	 * Gets all blocks in an area calculated by shooting vectors to the borders of a cube determined by the {@link ImprovedExplosion#size} and destroys them.
-	 * If any of the relative coordinates of the affected block exceed 511 they will be clamped to that value.
-	 * Encodes block positions into a singular int, increasing performance.
+	 * Collects the affected blocks in an {@link ExplosionBlockSet}, which needs only one bit per block.
 	 * The shape the vectors orient to can either be a sphere or a cube, depending on the players config.
 	 * @param xzStrength  a multiplier to the x and z vector addition, which makes the explosion more powerful. It should not be set higher than 1.2, otherwise blocks might be skipped
 	 * @param yStrength  a multiplier to the y vector addition, which makes the explosion more powerful. It should not be set to high, otherwise blocks might be skipped
@@ -167,67 +180,180 @@ public class ImprovedExplosion extends Explosion{
 	 * @param fire  whether or not the explosion should spawn fire afterwards
 	 * @param isStrongExplosion  whether or not fluids should be ignored in the explosion resistance calculation. Very useful for large explosions
 	 */
-	public void doBlockExplosion(float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean fire, boolean isStrongExplosion) {			
-		BlockPos posTNT = new BlockPos(Mth.floor(posX), Mth.floor(posY), Mth.floor(posZ));
-		Set<Integer> blocks = new HashSet<>();
-		for (int offX = -size; offX <= size; offX++) {
-			for (int offY = -size; offY <= size; offY++) {
-				for (int offZ = -size; offZ <= size; offZ++) {
-					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
-					if (((int) distance == size && LuckyTNTLibConfigValues.PERFORMANT_EXPLOSION.get()) || (!LuckyTNTLibConfigValues.PERFORMANT_EXPLOSION.get() && (offX == -size || offX == size || offY == -size || offY == size || offZ == -size || offZ == size))) {
-						double xStep = offX / distance;
-						double yStep = offY / distance;
-						double zStep = offZ / distance;
-						float vecLength = size * (0.7f + (float) Math.random() * 0.6f * randomVecLength);
-						double blockX = posX;
-						double blockY = posY;
-						double blockZ = posZ;
-						for (float vecStep = 0; vecStep < vecLength; vecStep += LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * 1.5f - 0.225f) {
-							blockX += xStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * xzStrength;
-							blockY += yStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * yStrength;
-							blockZ += zStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * xzStrength;
-							BlockPos pos = new BlockPos((int)blockX, (int)blockY, (int)blockZ);
-							if (!level.isInWorldBounds(pos)) {
-								break;
-							}
-							BlockState blockState = level.getBlockState(pos);
-							FluidState fluidState = level.getFluidState(pos);
-							if (!(isStrongExplosion && !fluidState.isEmpty())) {
-								Optional<Float> explosionResistance = damageCalculator.getBlockExplosionResistance(this, level, pos, blockState, fluidState);
-								if (explosionResistance.isPresent()) {
-									vecLength -= (explosionResistance.get() + 0.3f) * 0.3f * resistanceImpact;
-								}
-								if (vecLength > 0 && damageCalculator.shouldBlockExplode(this, level, pos, blockState, vecLength) && !blockState.isAir()) {
-									blocks.add(encodeBlockPos(pos.subtract(posTNT).getX(), pos.subtract(posTNT).getY(), pos.subtract(posTNT).getZ()));
-								}
-							} else {
-								blocks.add(encodeBlockPos(pos.subtract(posTNT).getX(), pos.subtract(posTNT).getY(), pos.subtract(posTNT).getZ()));
-							}
-						}
-					}
-				}
-			}
+	public void doBlockExplosion(float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean fire, boolean isStrongExplosion) {
+		doBlockExplosion(ExplosionPlan.get(size, xzStrength, yStrength), resistanceImpact, randomVecLength, fire, isStrongExplosion);
+	}
+	
+	/**
+	 * Gets all blocks in an area calculated by shooting the vectors of the given {@link ExplosionPlan} and destroys them.
+	 * Collects the affected blocks in an {@link ExplosionBlockSet}, which needs only one bit per block.
+	 * @param plan  the precompiled explosion vectors. If the plan was compiled for a different size the fitting plan will be used instead
+	 * @param resistanceImpact  the relative impact that explosion resistance of blocks has on the penetration force of explosion
+	 * @param randomVecLength  the greater this value, the more distributed the length of the explosion vectors will be. Large explosions should have a value less than 1
+	 * @param fire  whether or not the explosion should spawn fire afterwards
+	 * @param isStrongExplosion  whether or not fluids should be ignored in the explosion resistance calculation. Very useful for large explosions
+	 */
+	public void doBlockExplosion(ExplosionPlan plan, float resistanceImpact, float randomVecLength, boolean fire, boolean isStrongExplosion) {
+		calculateBlockExplosion(plan, resistanceImpact, randomVecLength, isStrongExplosion);
+		applyBlockExplosion(fire);
+	}
+	
+	/**
+	 * Gets all blocks in an area calculated by shooting the vectors of the given {@link ExplosionPlan} without destroying them yet.
+	 * The blocks are added to {@link ImprovedExplosion#getToBlow()} and destroyed by {@link ImprovedExplosion#applyBlockExplosion(boolean)}.
+	 * In between, listeners of the {@link ExplosionEvent.Detonate} fired by {@link ImprovedExplosion#doEntityExplosion(float, boolean)} 
+	 * can remove blocks from {@link ImprovedExplosion#getToBlow()} to keep them from being destroyed.
+	 * @param plan  the precompiled explosion vectors. If the plan was compiled for a different size the fitting plan will be used instead
+	 * @param resistanceImpact  the relative impact that explosion resistance of blocks has on the penetration force of explosion
+	 * @param randomVecLength  the greater this value, the more distributed the length of the explosion vectors will be. Large explosions should have a value less than 1
+	 * @param isStrongExplosion  whether or not fluids should be ignored in the explosion resistance calculation. Very useful for large explosions
+	 */
+	public void calculateBlockExplosion(ExplosionPlan plan, float resistanceImpact, float randomVecLength, boolean isStrongExplosion) {
+		calculateBlockExplosion(new ExplosionPipeline.Builder().plan(plan).resistanceImpact(resistanceImpact).randomVecLength(randomVecLength).strongExplosion(isStrongExplosion).build());
+	}
+	
+	/**
+	 * Runs the ray, condition and dedupe stages of the given {@link ExplosionPipeline} without destroying the blocks yet.
+	 * The blocks are added to {@link ImprovedExplosion#getToBlow()} and destroyed by {@link ImprovedExplosion#applyBlockExplosion(boolean)},
+	 * so the apply stage of the pipeline is not used and the pipeline should not be streaming.
+	 * @param pipeline  the ExplosionPipeline
+	 */
+	public void calculateBlockExplosion(ExplosionPipeline pipeline) {
+		addPendingBlocks(collectBlocks(pipeline));
+	}
+	
+	/**
+	 * Adds blocks to {@link ImprovedExplosion#getToBlow()} and to the blocks destroyed by {@link ImprovedExplosion#applyBlockExplosion(boolean)}.
+	 * @param blocks  the blocks
+	 */
+	void addPendingBlocks(ExplosionBlockSet blocks) {
+		addAffectedBlocks(blocks);
+		if(pendingBlocks == null) {
+			pendingBlocks = blocks;
 		}
-		affectedBlocks.addAll(blocks);
-		for(int intPos : blocks) {
-			BlockPos pos = decodeBlockPos(intPos).offset(posTNT);
-			level.getBlockState(pos).getBlock().onBlockExploded(level.getBlockState(pos), level, pos, this);
+		else {
+			pendingBlocks.addAll(blocks);
+		}
+	}
+	
+	/**
+	 * Destroys the blocks of {@link ImprovedExplosion#getToBlow()} once they have been gotten by {@link ImprovedExplosion#calculateBlockExplosion(ExplosionPlan, float, float, boolean)},
+	 * including blocks added and excluding blocks removed by listeners of the {@link ExplosionEvent.Detonate}.
+	 * If the blocks were kept outside of the heap, see {@link ExplosionBufferPool}, {@link ImprovedExplosion#getToBlow()} is empty afterwards.
+	 * @param fire  whether or not the explosion should spawn fire afterwards
+	 */
+	public void applyBlockExplosion(boolean fire) {
+		applyBlockExplosion(fire, false);
+	}
+	
+	/**
+	 * Destroys the blocks of {@link ImprovedExplosion#getToBlow()} once they have been gotten by {@link ImprovedExplosion#calculateBlockExplosion(ExplosionPlan, float, float, boolean)}
+	 * and may fill the crater with the fluids around it, see {@link FluidSettler}.
+	 * Blocks added or removed by listeners of the {@link ExplosionEvent.Detonate} are destroyed, filled and set on fire or spared accordingly.
+	 * If the blocks were kept outside of the heap, see {@link ExplosionBufferPool}, {@link ImprovedExplosion#getToBlow()} is empty afterwards.
+	 * @param fire  whether or not the explosion should spawn fire afterwards
+	 * @param settleFluids  whether or not fluids should flow into the crater at once
+	 */
+	public void applyBlockExplosion(boolean fire, boolean settleFluids) {
+		if(pendingBlocks == null) {
+			return;
+		}
+		pendingBlocks = null;
+		ExplosionResult result = getResult();
+		beginDestroying();
+		result.forEach(this::destroyBlock);
+		finishDestroying();
+		if(settleFluids) {
+			FluidSettler settler = new FluidSettler(this);
+			result.forEach(settler::add);
+			settler.settle();
 		}
 		if(fire) {
-			for(int intPos : blocks) {
-				BlockPos pos = decodeBlockPos(intPos).offset(posTNT);
-				if(Math.random() > 0.75f && level.getBlockState(pos).isAir() && level.getBlockState(pos.below()).isSolidRender(level, pos)) {
-					level.setBlockAndUpdate(pos, BaseFireBlock.getState(level, pos));
-				}
-			}
+			result.forEach(this::spawnFire);
+		}
+		result.release();
+	}
+	
+	/**
+	 * Runs the stages of the given {@link ExplosionPipeline}: shoots its explosion vectors, filters the blocks hit by its condition,
+	 * drops blocks that have already been hit and finally destroys the blocks or passes them to its {@link IForEachBlockExplosionEffect}.
+	 * In streaming mode every block is applied as soon as it is hit for the first time.
+	 * All other block explosions of this class are run by a pipeline as well.
+	 * @param pipeline  the ExplosionPipeline
+	 */
+	public void doBlockExplosion(ExplosionPipeline pipeline) {
+		ExplosionBlockSet blocks = collectBlocks(pipeline);
+		if(pipeline.saveBlockPos) {
+			addAffectedBlocks(blocks);
+		}
+		if(!pipeline.streaming) {
+			beginDestroying();
+			blocks.forEach(pos -> applyBlock(pipeline, pos));
+			finishDestroying();
+		}
+		if(pipeline.settleFluids) {
+			FluidSettler settler = new FluidSettler(this);
+			blocks.forEach(settler::add);
+			settler.settle();
+		}
+		if(pipeline.fire) {
+			blocks.forEach(this::spawnFire);
+		}
+	}
+	
+	/**
+	 * Works like {@link ImprovedExplosion#doBlockExplosion(ExplosionPlan, float, float, boolean, boolean)},
+	 * but shoots the explosion vectors and destroys the blocks over as many ticks as needed to stay within the configured time budget per tick.
+	 * All vectors are shot before the first block is destroyed, so the explosion never sees the blocks it has already destroyed.
+	 * Outside of a {@link ServerLevel} the blocks are destroyed immediately.
+	 * @param plan  the precompiled explosion vectors. If the plan was compiled for a different size the fitting plan will be used instead
+	 * @param resistanceImpact  the relative impact that explosion resistance of blocks has on the penetration force of explosion
+	 * @param randomVecLength  the greater this value, the more distributed the length of the explosion vectors will be. Large explosions should have a value less than 1
+	 * @param fire  whether or not the explosion should spawn fire afterwards
+	 * @param isStrongExplosion  whether or not fluids should be ignored in the explosion resistance calculation. Very useful for large explosions
+	 */
+	public void doIncrementalBlockExplosion(ExplosionPlan plan, float resistanceImpact, float randomVecLength, boolean fire, boolean isStrongExplosion) {
+		doIncrementalBlockExplosion(new ExplosionPipeline.Builder().plan(plan).resistanceImpact(resistanceImpact).randomVecLength(randomVecLength).strongExplosion(isStrongExplosion).fire(fire).build());
+	}
+	
+	/**
+	 * Works like {@link ImprovedExplosion#doBlockExplosion(ExplosionPipeline)},
+	 * but runs the stages over as many ticks as needed to stay within the configured time budget per tick.
+	 * All blocks are found before the first block is applied, unless the pipeline is streaming.
+	 * Outside of a {@link ServerLevel} the blocks are applied immediately.
+	 * @param pipeline  the ExplosionPipeline
+	 */
+	public void doIncrementalBlockExplosion(ExplosionPipeline pipeline) {
+		if(!(level instanceof ServerLevel serverLevel)) {
+			doBlockExplosion(pipeline);
+			return;
 		}
+		ExplosionScheduler.get(serverLevel).start(new IncrementalExplosion(this, pipeline));
+	}
+	
+	/**
+	 * Works like {@link ImprovedExplosion#doIncrementalBlockExplosion(ExplosionPipeline)}, but also damages and throws back entities
+	 * through {@link ImprovedExplosion#doEntityExplosion(float, boolean)} once all blocks have been found and before the first block is applied.
+	 * This way listeners of the {@link ExplosionEvent.Detonate} see the blocks in {@link ImprovedExplosion#getToBlow()} and can change them,
+	 * as long as the pipeline saves the affected blocks.
+	 * Outside of a {@link ServerLevel} the entities are affected and the blocks applied immediately.
+	 * @param pipeline  the ExplosionPipeline
+	 * @param knockbackStrength  multiplier to the strength of the knockback
+	 * @param damageEntities  whether or not entities should be damaged by this explosion
+	 */
+	public void doIncrementalExplosion(ExplosionPipeline pipeline, float knockbackStrength, boolean damageEntities) {
+		if(!(level instanceof ServerLevel serverLevel)) {
+			doEntityExplosion(knockbackStrength, damageEntities);
+			doBlockExplosion(pipeline);
+			return;
+		}
+		ExplosionScheduler.get(serverLevel).start(new IncrementalExplosion(this, pipeline, knockbackStrength, damageEntities));
 	}
 	
 	/**
 	 * Gets all blocks in an area calculated by shooting vectors to the borders of a cube determined by the {@link ImprovedExplosion#size} 
 	 * and does to them whatever specified in the {@link IForEachBlockExplosionEffect}. 
-	 * If any of the relative coordinates of the affected block exceed 511 they will be clamped to that value.
-	 * Encodes block positions into a singular int, increasing performance.
+	 * Collects the affected blocks in an {@link ExplosionBlockSet}, which needs only one bit per block.
 	 * The shape the vectors orient to can either be a sphere or a cube, depending on the players config.
 	 * @param xzStrength  a multiplier to the x and z vector addition, which makes the explosion more powerful. It should not be set to high, otherwise blocks might be skipped
 	 * @param yStrength  a multiplier to the y vector addition, which makes the explosion more powerful. It should not be set to high, otherwise blocks might be skipped
@@ -238,60 +364,13 @@ public class ImprovedExplosion extends Explosion{
 	 * @param blockEffect  determines what should happen to the blocks gotten by this explosion
 	 */
 	public void doBlockExplosion(float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean isStrongExplosion, IForEachBlockExplosionEffect blockEffect) {
-		BlockPos posTNT = new BlockPos(Mth.floor(posX), Mth.floor(posY), Mth.floor(posZ));
-		Set<Integer> blocks = new HashSet<>();
-		for(int offX = -size; offX <= size; offX++) {
-			for(int offY = -size; offY <= size; offY++) {
-				for(int offZ = -size; offZ <= size; offZ++) {
-					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
-					if(((int)distance == size && LuckyTNTLibConfigValues.PERFORMANT_EXPLOSION.get()) || (!LuckyTNTLibConfigValues.PERFORMANT_EXPLOSION.get() && (offX == -size || offX == size || offY == -size || offY == size || offZ == -size || offZ == size))) {
-						double xStep = offX / distance;
-						double yStep = offY / distance;
-						double zStep = offZ / distance;
-						float vecLength = size * (0.7f + (float)Math.random() * 0.6f * randomVecLength);
-						double blockX = posX;
-						double blockY = posY;
-						double blockZ = posZ;
-						for(float vecStep = 0; vecStep < vecLength; vecStep += LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * 1.5f - 0.225f) {
-							blockX += xStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * xzStrength;
-							blockY += yStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * yStrength;
-							blockZ += zStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * xzStrength;
-							BlockPos pos = new BlockPos((int)blockX, (int)blockY, (int)blockZ);
-							if(!level.isInWorldBounds(pos)) {
-								break;
-							}
-							BlockState blockState = level.getBlockState(pos);
-							FluidState fluidState = level.getFluidState(pos);
-							if(!(isStrongExplosion && !fluidState.isEmpty())) {
-								Optional<Float> explosionResistance = damageCalculator.getBlockExplosionResistance(this, level, pos, blockState, fluidState);
-								if(explosionResistance.isPresent()) {
-									vecLength -= (explosionResistance.get() + 0.3f) * 0.3f * resistanceImpact;
-								}
-								if(vecLength > 0 && damageCalculator.shouldBlockExplode(this, level, pos, blockState, vecLength) && !blockState.isAir()) {
-									blocks.add(encodeBlockPos(pos.subtract(posTNT).getX(), pos.subtract(posTNT).getY(), pos.subtract(posTNT).getZ()));
-								}
-							}
-							else {
-								blocks.add(encodeBlockPos(pos.subtract(posTNT).getX(), pos.subtract(posTNT).getY(), pos.subtract(posTNT).getZ()));
-							}
-						}
-					}
-				}
-			}
-		}
-		affectedBlocks.addAll(blocks);
-		for(int intPos : blocks) {
-			BlockPos pos = decodeBlockPos(intPos).offset(posTNT);
-			double distance = Math.sqrt(pos.distToLowCornerSqr(posX, posY, posZ));
-			blockEffect.doBlockExplosion(level, pos, level.getBlockState(pos), distance);
-		}
+		doBlockExplosion(new ExplosionPipeline.Builder().strength(xzStrength, yStrength).resistanceImpact(resistanceImpact).randomVecLength(randomVecLength).strongExplosion(isStrongExplosion).blockEffect(blockEffect).build());
 	}
 	
 	/**
 	 * Gets blocks in an area calculated by shooting vectors to the borders of a cube determined by the {@link ImprovedExplosion#size} if the {@link IBlockExplosionCondition} is met 
 	 * and does to them whatever specified in the blockEffect.
-	 * If any of the relative coordinates of the affected block exceed 511 they will be clamped to that value.
-	 * Encodes block positions into a singular int, increasing performance.
+	 * Collects the affected blocks in an {@link ExplosionBlockSet}, which needs only one bit per block.
 	 * The shape the vectors orient to can either be a sphere or a cube, depending on the players config.
 	 * @param xzStrength  a multiplier to the x and z vector addition, which makes the explosion more powerful. It should not be set to high, otherwise blocks might be skipped
 	 * @param yStrength  a multiplier to the y vector addition, which makes the explosion more powerful. It should not be set to high, otherwise blocks might be skipped
@@ -299,61 +378,11 @@ public class ImprovedExplosion extends Explosion{
 	 * @param randomVecLength  the greater this value, the more distributed the length of the explosion vectors will be. Large explosions should have a value less than 1
 	 * @param fire  whether or not the explosion should spawn fire afterwards
 	 * @param isStrongExplosion  whether or not fluids should be ignored in the explosion resistance calculation. Very useful for large explosions
-	 * @param condition  the condition on which a block is added to the {@link Set} of blocks
+	 * @param condition  the condition on which a block is added to the {@link ExplosionBlockSet} of blocks
 	 * @param blockEffect  determines what should happen to the blocks gotten by this explosion
 	 */
 	public void doBlockExplosion(float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean isStrongExplosion, IBlockExplosionCondition condition, IForEachBlockExplosionEffect blockEffect) {
-		BlockPos posTNT = new BlockPos(Mth.floor(posX), Mth.floor(posY), Mth.floor(posZ));
-		Set<Integer> blocks = new HashSet<>();
-		for(int offX = -size; offX <= size; offX++) {
-			for(int offY = -size; offY <= size; offY++) {
-				for(int offZ = -size; offZ <= size; offZ++) {
-					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
-					if(((int)distance == size && LuckyTNTLibConfigValues.PERFORMANT_EXPLOSION.get()) || (!LuckyTNTLibConfigValues.PERFORMANT_EXPLOSION.get() && (offX == -size || offX == size || offY == -size || offY == size || offZ == -size || offZ == size))) {
-						double xStep = offX / distance;
-						double yStep = offY / distance;
-						double zStep = offZ / distance;
-						float vecLength = size * (0.7f + (float)Math.random() * 0.6f * randomVecLength);
-						double blockX = posX;
-						double blockY = posY;
-						double blockZ = posZ;
-						for(float vecStep = 0; vecStep < vecLength; vecStep += LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * 1.5f - 0.225f) {
-							blockX += xStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * xzStrength;
-							blockY += yStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * yStrength;
-							blockZ += zStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * xzStrength;
-							BlockPos pos = new BlockPos((int)blockX, (int)blockY, (int)blockZ);
-							if(!level.isInWorldBounds(pos)) {
-								break;
-							}
-							BlockState blockState = level.getBlockState(pos);
-							FluidState fluidState = level.getFluidState(pos);
-							if(!(isStrongExplosion && !fluidState.isEmpty())) {
-								Optional<Float> explosionResistance = damageCalculator.getBlockExplosionResistance(this, level, pos, blockState, fluidState);
-								if(explosionResistance.isPresent()) {
-									vecLength -= (explosionResistance.get() + 0.3f) * 0.3f * resistanceImpact;
-								}
-								if(vecLength > 0 && damageCalculator.shouldBlockExplode(this, level, pos, blockState, vecLength) && !blockState.isAir()) {
-									if(condition.conditionMet(level, pos, blockState, distance)) {
-										blocks.add(encodeBlockPos(pos.subtract(posTNT).getX(), pos.subtract(posTNT).getY(), pos.subtract(posTNT).getZ()));
-									}
-								}
-							}
-							else {
-								if(condition.conditionMet(level, pos, blockState, distance)) {
-									blocks.add(encodeBlockPos(pos.subtract(posTNT).getX(), pos.subtract(posTNT).getY(), pos.subtract(posTNT).getZ()));
-								}
-							}
-						}
-					}
-				}
-			}
-		}
-		affectedBlocks.addAll(blocks);
-		for(int intPos : blocks) {
-			BlockPos pos = decodeBlockPos(intPos).offset(posTNT);
-			double distance = Math.sqrt(pos.distToLowCornerSqr(posX, posY, posZ));
-			blockEffect.doBlockExplosion(level, pos, level.getBlockState(pos), distance);
-		}
+		doBlockExplosion(new ExplosionPipeline.Builder().strength(xzStrength, yStrength).resistanceImpact(resistanceImpact).randomVecLength(randomVecLength).strongExplosion(isStrongExplosion).condition(condition).blockEffect(blockEffect).build());
 	}
 	
 	/**
@@ -382,7 +411,7 @@ public class ImprovedExplosion extends Explosion{
 	
 	/**
 	 * Gets all blocks in an area calculated by shooting vectors to the borders of a cube determined by the {@link ImprovedExplosion#size} and destroys them.
-	 * Values of the relative coordinates can exceed 511, allowing for bigger explosions at the cost of more ram usage and slower explosion time.
+	 * Unlike the other block explosions this one only saves the affected blocks if asked to.
 	 * @param xzStrength  a multiplier to the x and z vector addition, which makes the explosion more powerful. It should not be set to high, otherwise blocks might be skipped
 	 * @param yStrength  a multiplier to the y vector addition, which makes the explosion more powerful. It should not be set to high, otherwise blocks might be skipped
 	 * @param resistanceImpact  the relative impact that explosion resistance of blocks has on the penetration force of explosion
@@ -392,73 +421,253 @@ public class ImprovedExplosion extends Explosion{
 	 * @param saveBlockPos  whether or not affected blocks should be saved to be used externally
 	 */
 	public void doOldBlockExplosion(float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean fire, boolean isStrongExplosion, boolean saveBlockPos) {
-		Set<BlockPos> blocks = new HashSet<>();
-		for(int offX = -size; offX <= size; offX++) {
-			for(int offY = -size; offY <= size; offY++) {
-				for(int offZ = -size; offZ <= size; offZ++) {
-					double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
-					if(((int)distance == size && LuckyTNTLibConfigValues.PERFORMANT_EXPLOSION.get()) || (!LuckyTNTLibConfigValues.PERFORMANT_EXPLOSION.get() && (offX == -size || offX == size || offY == -size || offY == size || offZ == -size || offZ == size))) {
-						double xStep = offX / distance;
-						double yStep = offY / distance;
-						double zStep = offZ / distance;
-						float vecLength = size * (0.7f + (float)Math.random() * 0.6f * randomVecLength);
-						double blockX = posX;
-						double blockY = posY;
-						double blockZ = posZ;
-						for(float vecStep = 0; vecStep < vecLength; vecStep += LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * 1.5f - 0.225f) {
-							blockX += xStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * xzStrength;
-							blockY += yStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * yStrength;
-							blockZ += zStep * LuckyTNTLibConfigValues.EXPLOSION_PERFORMANCE_FACTOR.get() * xzStrength;
-							BlockPos pos = new BlockPos((int)blockX, (int)blockY, (int)blockZ);
-							if(!level.isInWorldBounds(pos)) {
-								break;
-							}
-							BlockState blockState = level.getBlockState(pos);
-							FluidState fluidState = level.getFluidState(pos);
-							if(!(isStrongExplosion && !fluidState.isEmpty())) {
-								Optional<Float> explosionResistance = damageCalculator.getBlockExplosionResistance(this, level, pos, blockState, fluidState);
-								if(explosionResistance.isPresent()) {
-									vecLength -= (explosionResistance.get() + 0.3f) * 0.3f * resistanceImpact;
-								}
-								if(vecLength > 0 && damageCalculator.shouldBlockExplode(this, level, pos, blockState, vecLength) && !blockState.isAir()) {
-									blocks.add(pos);
-								}
-							}
-							else {
-								blocks.add(pos);
-							}
-						}
-					}
-				}
-			}
+		doBlockExplosion(new ExplosionPipeline.Builder().strength(xzStrength, yStrength).resistanceImpact(resistanceImpact).randomVecLength(randomVecLength).strongExplosion(isStrongExplosion).fire(fire).saveBlockPos(saveBlockPos).build());
+	}
+	
+	/**
+	 * Lets the block at the given position be destroyed by this explosion.
+	 * The position is only copied if there is a block to destroy, as blocks may keep the position they are given.
+	 * Between {@link ImprovedExplosion#beginDestroying()} and {@link ImprovedExplosion#finishDestroying()} blocks may only be collected instead.
+	 * @param pos  the position of the block, which may be mutable
+	 */
+	void destroyBlock(BlockPos pos) {
+		BlockState state = cursor.getBlockState(pos);
+		if(state.isAir()) {
+			return;
+		}
+		if(destroyBuffer != null && DEFAULT_EXPLODED.get(state.getBlock().getClass())) {
+			destroyBuffer.setBlock(pos, Blocks.AIR.defaultBlockState());
+			bufferedBlocks.put(pos.asLong(), state.getBlock());
+		}
+		else {
+			state.getBlock().onBlockExploded(state, level, pos.immutable(), this);
 		}
-		if(saveBlockPos) {
-			BlockPos posTNT = new BlockPos(Mth.floor(posX), Mth.floor(posY), Mth.floor(posZ));
-			for(BlockPos pos : blocks) {
-				affectedBlocks.add(encodeBlockPos(pos.subtract(posTNT).getX(), pos.subtract(posTNT).getY(), pos.subtract(posTNT).getZ()));
+	}
+	
+	/**
+	 * Starts collecting the blocks destroyed by {@link ImprovedExplosion#destroyBlock(BlockPos)} in a {@link BlockWriteBuffer} if deferred lighting or boundary updates are enabled in the config.
+	 * Only blocks that keep the default {@link IForgeBlock#onBlockExploded(BlockState, Level, BlockPos, Explosion)}, which replaces them with air, are collected,
+	 * all others are still destroyed right away. Must not be called while the explosion is still finding blocks, as those would still see the collected blocks.
+	 */
+	void beginDestroying() {
+		boolean deferLighting = LuckyTNTLibConfigValues.DEFERRED_EXPLOSION_LIGHTING.get(), boundaryUpdates = LuckyTNTLibConfigValues.EXPLOSION_BOUNDARY_UPDATES.get();
+		if((deferLighting || boundaryUpdates) && level instanceof ServerLevel && destroyBuffer == null) {
+			destroyBuffer = new BlockWriteBuffer(level, deferLighting, boundaryUpdates);
+			bufferedBlocks = new Long2ObjectOpenHashMap<>();
+		}
+	}
+	
+	/**
+	 * Writes the blocks collected since {@link ImprovedExplosion#beginDestroying()} to the level and lets them know they were exploded.
+	 */
+	void finishDestroying() {
+		if(destroyBuffer == null) {
+			return;
+		}
+		BlockWriteBuffer buffer = destroyBuffer;
+		Long2ObjectOpenHashMap<Block> blocks = bufferedBlocks;
+		destroyBuffer = null;
+		bufferedBlocks = null;
+		buffer.commit();
+		for(Long2ObjectMap.Entry<Block> entry : blocks.long2ObjectEntrySet()) {
+			entry.getValue().wasExploded(level, BlockPos.of(entry.getLongKey()), this);
+		}
+	}
+	
+	/**
+	 * Runs the apply stage of a pipeline for a single block, which destroys the block or passes it to the {@link IForEachBlockExplosionEffect} of the pipeline.
+	 * @param pipeline  the ExplosionPipeline
+	 * @param pos  the position of the block, which may be mutable
+	 */
+	void applyBlock(ExplosionPipeline pipeline, BlockPos pos) {
+		if(pipeline.blockEffect == null) {
+			destroyBlock(pos);
+		}
+		else {
+			pipeline.blockEffect.doBlockExplosion(level, pos.immutable(), cursor.getBlockState(pos), Math.sqrt(pos.distToLowCornerSqr(posX, posY, posZ)));
+		}
+	}
+	
+	/**
+	 * Randomly places fire at the given position if it is empty and above a solid block.
+	 * @param pos  the position, which may be mutable
+	 */
+	void spawnFire(BlockPos pos) {
+		if(random.nextFloat() > 0.75f && cursor.getBlockState(pos).isAir() && cursor.getBlockState(pos.getX(), pos.getY() - 1, pos.getZ()).isSolidRender(level, pos)) {
+			BlockPos firePos = pos.immutable();
+			level.setBlockAndUpdate(firePos, BaseFireBlock.getState(level, firePos));
+		}
+	}
+	
+	/**
+	 * Creates an {@link ExplosionBlockSet} large enough to hold all blocks the vectors of the given plan can reach.
+	 * @param plan  the precompiled explosion vectors
+	 * @param randomVecLength  the greater this value, the more distributed the length of the explosion vectors will be
+	 * @return the ExplosionBlockSet
+	 */
+	ExplosionBlockSet newBlockSet(ExplosionPlan plan, float randomVecLength) {
+		return newBlockSet(plan.getReach(getMaxVecLength(randomVecLength)));
+	}
+	
+	/**
+	 * Creates an {@link ExplosionBlockSet} large enough to hold all blocks up to the given distance from the center.
+	 * @param reach  the greatest distance from the center a block can have
+	 * @return the ExplosionBlockSet
+	 */
+	ExplosionBlockSet newBlockSet(double reach) {
+		return new ExplosionBlockSet(level, BlockPos.containing(posX, posY, posZ), reach);
+	}
+	
+	/**
+	 * Adds blocks to the blocks affected by this explosion, which are returned by {@link ImprovedExplosion#getToBlow()}.
+	 * @param blocks  the blocks
+	 */
+	void addAffectedBlocks(ExplosionBlockSet blocks) {
+		if(result == null) {
+			result = new ExplosionResult(blocks);
+		}
+		else {
+			result.addAll(blocks);
+		}
+	}
+	
+	/**
+	 * Gets the {@link ExplosionResult} holding all blocks affected by this explosion so far.
+	 * @return the ExplosionResult
+	 */
+	public ExplosionResult getResult() {
+		if(result == null) {
+			result = new ExplosionResult();
+		}
+		return result;
+	}
+	
+	/**
+	 * Runs the ray, condition and dedupe stages of a pipeline and, in streaming mode, also the apply stage.
+	 * The {@link ExplosionEngine#WAVEFRONT} and {@link ExplosionEngine#HIERARCHICAL} engines spread the energy of the explosion through an {@link ExplosionWavefront}.
+	 * Otherwise, depending on the plan, the vectors either advance in fixed steps or visit every block along their way exactly once.
+	 * If no stage has to run on the thread of the level while shooting and the explosion is at least as large as configured,
+	 * the vectors are shot by multiple threads through an {@link ExplosionSnapshot}.
+	 * If enabled in the config, the blocks are replayed from the {@link ExplosionCraterCache} instead if an identical explosion has already happened on identical terrain.
+	 * @param pipeline  the ExplosionPipeline
+	 * @return the blocks that passed the condition stage
+	 */
+	ExplosionBlockSet collectBlocks(ExplosionPipeline pipeline) {
+		return collectBlocks(pipeline, null);
+	}
+	
+	/**
+	 * Works like {@link ImprovedExplosion#collectBlocks(ExplosionPipeline)}, but adds the blocks to the given set,
+	 * so that the dedupe stage also drops blocks that have already been hit by other explosions.
+	 * @param pipeline  the ExplosionPipeline
+	 * @param blocks  the set to add the blocks to, or null to create a new one
+	 * @return the blocks that passed the condition stage, including the blocks that were already part of the given set
+	 */
+	ExplosionBlockSet collectBlocks(ExplosionPipeline pipeline, @Nullable ExplosionBlockSet blocks) {
+		float randomVecLength = pipeline.randomVecLength;
+		long stream = random.nextLong();
+		cursor.beginTrace(!pipeline.streaming);
+		ExplosionWavefront wavefront = null;
+		ExplosionPlan plan = null;
+		double reach;
+		if(pipeline.engine != ExplosionEngine.RAYS) {
+			wavefront = ExplosionWavefront.of(this, pipeline, stream);
+			reach = wavefront.getReach();
+		}
+		else {
+			plan = pipeline.getPlan(size);
+			reach = plan.getReach(getMaxVecLength(randomVecLength));
+		}
+		ExplosionCraterCache.Key key = null;
+		if(blocks == null) {
+			blocks = newBlockSet(reach);
+			key = ExplosionCraterCache.getKey(this, pipeline, plan, reach);
+			if(key != null && ExplosionCraterCache.replay(key, cursor, BlockPos.containing(posX, posY, posZ), blocks)) {
+				return blocks;
 			}
 		}
-		for(BlockPos pos : blocks) {
-			level.getBlockState(pos).getBlock().onBlockExploded(level.getBlockState(pos), level, pos, this);
+		if(wavefront != null) {
+			wavefront.run(createRayHit(pipeline, blocks), Long.MAX_VALUE);
 		}
-		if(fire) {
-			for(BlockPos pos : blocks) {
-				if(Math.random() > 0.75f && level.getBlockState(pos).isAir() && level.getBlockState(pos.below()).isSolidRender(level, pos)) {
-					level.setBlockAndUpdate(pos, BaseFireBlock.getState(level, pos));
-				}
+		else {
+			ExplosionSnapshot snapshot = createParallelSnapshot(pipeline, reach);
+			if(snapshot != null) {
+				ExplosionRayTracer.traceParallel(this, plan, snapshot, stream, randomVecLength, pipeline.resistanceImpact, pipeline.isStrongExplosion, 0, plan.rayCount, blocks);
 			}
+			else {
+				ExplosionRayTracer tracer = new ExplosionRayTracer(this, plan, cursor, level, pipeline.resistanceImpact, pipeline.isStrongExplosion, createRayHit(pipeline, blocks), stream, randomVecLength);
+				tracer.traceRays(0, plan.rayCount);
+			}
+		}
+		if(key != null) {
+			ExplosionCraterCache.put(key, cursor, BlockPos.containing(posX, posY, posZ), blocks);
+		}
+		return blocks;
+	}
+	
+	/**
+	 * Copies the blocks within reach into an {@link ExplosionSnapshot} if the vectors of the given pipeline may be shot by multiple threads.
+	 * Besides an explosion of at least the configured size whose pipeline has no stage running on the thread of the level, this needs an explosion
+	 * whose blocks always explode once reached and whose resistances can all be taken from the {@link ExplosionResistanceTable} for every state in the snapshot,
+	 * as neither the {@link ImprovedExplosion#damageCalculator} nor the resistance hooks of blocks may be called off the thread of the level.
+	 * @param pipeline  the ExplosionPipeline
+	 * @param reach  the greatest distance from the center a block of the explosion can have
+	 * @return the snapshot or null if the vectors have to be shot on the thread of the level
+	 */
+	@Nullable
+	ExplosionSnapshot createParallelSnapshot(ExplosionPipeline pipeline, double reach) {
+		int threshold = LuckyTNTLibConfigValues.PARALLEL_EXPLOSION_THRESHOLD.get();
+		if(!pipeline.allowsParallelRays() || !tableResistance || !alwaysExplodes || threshold <= 0 || size < threshold || Runtime.getRuntime().availableProcessors() <= 1) {
+			return null;
 		}
+		ExplosionSnapshot snapshot = new ExplosionSnapshot(level, posX, posY, posZ, reach);
+		return snapshot.hasDynamicStates() ? null : snapshot;
+	}
+	
+	/**
+	 * Creates the {@link IRayHit} that runs the condition and dedupe stages of a pipeline and, in streaming mode, also the apply stage.
+	 * @param pipeline  the ExplosionPipeline
+	 * @param blocks  receives the blocks that passed the condition stage
+	 * @return the IRayHit
+	 */
+	IRayHit createRayHit(ExplosionPipeline pipeline, ExplosionBlockSet blocks) {
+		IBlockExplosionCondition condition = pipeline.condition;
+		return (pos, blockState, distance) -> {
+			if((condition == null || condition.conditionMet(level, pos, blockState, distance)) && blocks.add(pos) && pipeline.streaming) {
+				applyBlock(pipeline, pos);
+			}
+		};
+	}
+	
+	/**
+	 * Gets the initial length of an explosion vector from a stream drawn from the {@link ImprovedExplosion#random}.
+	 * @param stream  the seed of the stream
+	 * @param ray  the index of the vector
+	 * @param randomVecLength  the greater this value, the more distributed the length of the explosion vectors will be
+	 * @return the initial length
+	 */
+	float getVecLength(long stream, long ray, float randomVecLength) {
+		return size * (0.7f + ExplosionRandom.getRayFloat(stream, ray) * 0.6f * randomVecLength);
+	}
+	
+	/**
+	 * @return the greatest initial length an explosion vector can have
+	 */
+	float getMaxVecLength(float randomVecLength) {
+		return size * (0.7f + 0.6f * Math.max(randomVecLength, 0));
 	}
 	
 	/**
 	 * Encodes 3 coordinates into a singular int value. 
 	 * Coordinates greater than the absolute value of 511 will be clamped to 511.
+	 * @deprecated affected blocks are kept in an {@link ExplosionResult}, which has no limit in size
 	 * @implNote coordinates given must be realtive coordinates to the center of the explosion
 	 * @param x  the x position of the block
 	 * @param y  the y position of the block
 	 * @param z  the z position of the block
 	 * @return encoded int containing information about x, y and z positions, all of which can have values between -511 and 511
 	 */
+	@Deprecated
 	protected int encodeBlockPos(int x, int y, int z) {
 		int x0 = Integer.signum(x);
 		x = Math.abs(x) > 511 ? 511 : Math.abs(x);
@@ -486,7 +695,9 @@ public class ImprovedExplosion extends Explosion{
 	 * Decodes an encoded value generated by {@link ImprovedExplosion#encodeBlockPos(int, int, int)} into a {@link BlockPos}.
 	 * @param encodedVal  the position encoded by {@link ImprovedExplosion#encodeBlockPos(int, int, int)}
 	 * @return BlockPos with the relative x, y and z coordinates decoded again with an absolute max value of 511
+	 * @deprecated affected blocks are kept in an {@link ExplosionResult}, which has no limit in size
 	 */
+	@Deprecated
 	protected BlockPos decodeBlockPos(int encodedVal) {
 		int zRaw = (encodedVal & 0b00000000000000000000000111111111);
 		int zNeg = (encodedVal & 0b00000000000000000000001000000000) >> 9;
@@ -506,48 +717,81 @@ public class ImprovedExplosion extends Explosion{
 	 * @param damageEntities  whether or not entities should be damaged by this explosion
 	 */
 	public void doEntityExplosion(float knockbackStrength, boolean damageEntities) {
-		List<Entity> entities = level.getEntities(getDirectSourceEntity(), new AABB(posX - size * 2, posY - size * 2, posZ - size * 2, posX + size * 2, posY + size * 2, posZ + size * 2));
+		List<Entity> entities = level.getEntities(getDirectSourceEntity(), getEntityArea());
 		ForgeEventFactory.onExplosionDetonate(level, this, entities, size * 2);
 		for(Entity entity : entities) {
-			if(!entity.ignoreExplosion(this)) {
-				double distance = Math.sqrt(entity.distanceToSqr(center())) / (size * 2);
-				if(distance <= 1f) {
-					double offX = (entity.getX() - posX);
-					double offY = (entity.getEyeY() - posY);
-					double offZ = (entity.getZ() - posZ);
-					double distance2 = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
-					offX /= distance2;
-					offY /= distance2;
-					offZ /= distance2;
-					double seenPercent = getSeenPercent(center(), entity);
-					float damage = (1f - (float)distance) * (float)seenPercent;
-					if(damageEntities) {
-						entity.hurt(damageSource, (damage * damage + damage) / 2f * 7 * size + 1f);
-					}
-					double knockback = damage;
-					if(entity instanceof LivingEntity lEnt) {
-						knockback = ProtectionEnchantment.getExplosionKnockbackAfterDampener(lEnt, damage);
-					}
-					entity.setDeltaMovement(entity.getDeltaMovement().add(offX * knockback * knockbackStrength, offY * knockback * knockbackStrength, offZ * knockback * knockbackStrength));
-					if(entity instanceof Player) {
-						Player player = (Player)entity;
-						player.hurtMarked = true;
-						if(!player.isSpectator() && (!player.isCreative() || !player.getAbilities().flying)) {
-							getHitPlayers().put(player, new Vec3(offX * damage, offY * damage, offZ * damage));
-						}
+			float damage = getHitStrength(entity);
+			if(damage >= 0) {
+				Vec3 direction = getHitDirection(entity);
+				if(damageEntities) {
+					entity.hurt(damageSource, getDamage(damage));
+				}
+				double knockback = damage;
+				if(entity instanceof LivingEntity lEnt) {
+					knockback = ProtectionEnchantment.getExplosionKnockbackAfterDampener(lEnt, damage);
+				}
+				entity.setDeltaMovement(entity.getDeltaMovement().add(direction.scale(knockback * knockbackStrength)));
+				if(entity instanceof Player) {
+					Player player = (Player)entity;
+					player.hurtMarked = true;
+					if(!player.isSpectator() && (!player.isCreative() || !player.getAbilities().flying)) {
+						getHitPlayers().put(player, direction.scale(damage));
 					}
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Calculates how strongly an entity is hit by this explosion, which depends on its distance to the center and how much of it can be seen from there.
+	 * @param entity  the entity
+	 * @return the strength between 0 and 1, or -1 if the entity ignores this explosion or is out of its reach
+	 */
+	float getHitStrength(Entity entity) {
+		if(entity.ignoreExplosion(this)) {
+			return -1;
+		}
+		double distance = Math.sqrt(entity.distanceToSqr(center())) / (size * 2);
+		if(distance > 1f) {
+			return -1;
+		}
+		return (1f - (float)distance) * (float)getSeenPercent(center(), entity);
+	}
+	
+	/**
+	 * @param entity  the entity
+	 * @return the direction from the center of this explosion to the eyes of the entity
+	 */
+	Vec3 getHitDirection(Entity entity) {
+		double offX = (entity.getX() - posX);
+		double offY = (entity.getEyeY() - posY);
+		double offZ = (entity.getZ() - posZ);
+		double distance = Math.sqrt(offX * offX + offY * offY + offZ * offZ);
+		return new Vec3(offX / distance, offY / distance, offZ / distance);
+	}
+	
+	/**
+	 * @param strength  how strongly an entity is hit, see {@link ImprovedExplosion#getHitStrength(Entity)}
+	 * @return the damage dealt to the entity
+	 */
+	float getDamage(float strength) {
+		return (strength * strength + strength) / 2f * 7 * size + 1f;
+	}
+	
+	/**
+	 * @return the area in which entities can be affected by this explosion
+	 */
+	AABB getEntityArea() {
+		return new AABB(posX - size * 2, posY - size * 2, posZ - size * 2, posX + size * 2, posY + size * 2, posZ + size * 2);
+	}
+	
 	/**
 	 * Does whatever specified in the {@link IForEachBlockExplosionEffect} to all entities gotten by this explosion,
 	 * which is determined by the {@link ImprovedExplosion#size}.
 	 * @param entityEffect  determines what should be done to the entities gotten by this explosion
 	 */
 	public void doEntityExplosion(IForEachEntityExplosionEffect entityEffect) {
-		List<Entity> entities = level.getEntities(getDirectSourceEntity(), new AABB(posX - size * 2, posY - size * 2, posZ - size * 2, posX + size * 2, posY + size * 2, posZ + size * 2));
+		List<Entity> entities = level.getEntities(getDirectSourceEntity(), getEntityArea());
 		ForgeEventFactory.onExplosionDetonate(level, this, entities, size * 2);
 		for(Entity entity : entities) {
 			if(!entity.ignoreExplosion(this)) {
@@ -586,13 +830,22 @@ public class ImprovedExplosion extends Explosion{
 	public void finalizeExplosion(boolean spawnParticles) {		
 	}
 	
+	/**
+	 * Gets a lazy view of the {@link ExplosionResult} of this explosion, which creates positions only when they are accessed.
+	 * Blocks removed from or added to the list are written back to the result.
+	 */
 	@Override
-	@Nullable
 	public List<BlockPos> getToBlow(){
-		List<BlockPos> blocks = new ArrayList<>();
-		for(int intPos : affectedBlocks) {
-			blocks.add(decodeBlockPos(intPos).offset(Mth.floor(posX), Mth.floor(posY), Mth.floor(posZ)));
-		}
-		return blocks;
+		return getResult().asList();
+	}
+	
+	/**
+	 * Receives the blocks destroyed by the explosion vectors of {@link ExplosionRayTracer}.
+	 * The given position may be mutable and must be copied if it is kept.
+	 */
+	@FunctionalInterface
+	interface IRayHit {
+		
+		void hit(BlockPos pos, BlockState state, double distance);
 	}
 }
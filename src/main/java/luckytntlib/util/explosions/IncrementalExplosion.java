@@ -0,0 +1,219 @@
+package luckytntlib.util.explosions;
+
+import java.nio.LongBuffer;
+
+import javax.annotation.Nullable;
+
+import net.minecraft.core.BlockPos;
+
+/**
+ * An IncrementalExplosion destroys the blocks of an {@link ImprovedExplosion} over multiple ticks.
+ * <p>
+ * It works like a state machine that runs the stages of an {@link ExplosionPipeline}: it first shoots all explosion vectors or spreads the whole wavefront,
+ * then destroys the blocks or passes them to the block effect of the pipeline, lets fluids settle in the crater if the pipeline wants to and finally spawns fire,
+ * pausing whenever the time budget of the current tick is used up and continuing where it stopped in the next tick.
+ * Unless the pipeline is streaming, all blocks are found before the first block is destroyed, so the explosion never sees the blocks it has already destroyed,
+ * and blocks that have been removed by something else in the meantime are skipped.
+ * If the explosion also affects entities, see {@link ImprovedExplosion#doIncrementalExplosion(ExplosionPipeline, float, boolean)},
+ * they are damaged and thrown back once all blocks have been found, so that the {@link net.minecraftforge.event.level.ExplosionEvent.Detonate} carries the blocks.
+ * If the pipeline saves the affected blocks, the later stages work on {@link ImprovedExplosion#getToBlow()},
+ * so blocks added to or removed from it once all blocks have been found are respected.
+ * <p>
+ * Running explosions are kept by the {@link ExplosionScheduler} of their level and processed one after another at the end of every level tick.
+ */
+public class IncrementalExplosion {
+
+	private static final int RAYS_PER_CHECK = 64;
+	private static final int BLOCKS_PER_CHECK = 64;
+	private static final int RAYS_PER_PARALLEL_BATCH = 4096;
+
+	private final ImprovedExplosion explosion;
+	private final ExplosionPipeline pipeline;
+	@Nullable private final ExplosionPlan plan;
+	private final long stream;
+	private final boolean entityExplosion;
+	private final float knockbackStrength;
+	private final boolean damageEntities;
+	@Nullable private ExplosionSnapshot snapshot;
+	@Nullable private ExplosionRayTracer tracer;
+	@Nullable private ExplosionWavefront wavefront;
+	@Nullable private ExplosionBlockSet hits;
+	@Nullable private LongBuffer blocks;
+	@Nullable private ExplosionResult result;
+	private int blockCount;
+	private Stage stage = Stage.TRACE;
+	private int index;
+	@Nullable private FluidSettler settler;
+	private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+	IncrementalExplosion(ImprovedExplosion explosion, ExplosionPipeline pipeline) {
+		this(explosion, pipeline, false, 0, false);
+	}
+
+	IncrementalExplosion(ImprovedExplosion explosion, ExplosionPipeline pipeline, float knockbackStrength, boolean damageEntities) {
+		this(explosion, pipeline, true, knockbackStrength, damageEntities);
+	}
+
+	private IncrementalExplosion(ImprovedExplosion explosion, ExplosionPipeline pipeline, boolean entityExplosion, float knockbackStrength, boolean damageEntities) {
+		this.explosion = explosion;
+		this.pipeline = pipeline;
+		this.entityExplosion = entityExplosion;
+		this.knockbackStrength = knockbackStrength;
+		this.damageEntities = damageEntities;
+		stream = explosion.random.nextLong();
+		if(pipeline.engine != ExplosionEngine.RAYS) {
+			plan = null;
+			wavefront = ExplosionWavefront.of(explosion, pipeline, stream);
+			hits = explosion.newBlockSet(wavefront.getReach());
+			return;
+		}
+		plan = pipeline.getPlan(explosion.size);
+		hits = explosion.newBlockSet(plan, pipeline.randomVecLength);
+		snapshot = explosion.createParallelSnapshot(pipeline, plan.getReach(explosion.getMaxVecLength(pipeline.randomVecLength)));
+	}
+
+	/**
+	 * Continues this explosion until it is finished or the deadline has passed.
+	 * Some work is always done, even if the deadline has already passed when this is called.
+	 * @param deadline  the time in the form of {@link System#nanoTime()} at which to pause
+	 * @return whether or not the explosion is finished
+	 */
+	boolean tick(long deadline) {
+		explosion.cursor.beginTrace(!pipeline.streaming);
+		if(stage == Stage.TRACE) {
+			if(!trace(deadline)) {
+				return false;
+			}
+			if(pipeline.saveBlockPos) {
+				explosion.addAffectedBlocks(hits);
+				result = explosion.getResult();
+			}
+			else {
+				blocks = hits.toLongBuffer();
+				blockCount = hits.size();
+			}
+			if(entityExplosion) {
+				explosion.doEntityExplosion(knockbackStrength, damageEntities);
+			}
+			hits = null;
+			snapshot = null;
+			tracer = null;
+			wavefront = null;
+			stage = !pipeline.streaming ? Stage.DESTROY : getStageAfterDestroy();
+			index = 0;
+		}
+		if(stage == Stage.DESTROY) {
+			explosion.beginDestroying();
+			while(index < getBlockCount()) {
+				explosion.applyBlock(pipeline, getBlock(index++));
+				if(index % BLOCKS_PER_CHECK == 0 && System.nanoTime() >= deadline) {
+					explosion.finishDestroying();
+					return false;
+				}
+			}
+			explosion.finishDestroying();
+			stage = getStageAfterDestroy();
+			index = 0;
+		}
+		if(stage == Stage.SETTLE) {
+			if(settler == null) {
+				settler = new FluidSettler(explosion);
+			}
+			while(index < getBlockCount()) {
+				settler.add(getBlock(index++));
+				if(index % BLOCKS_PER_CHECK == 0 && System.nanoTime() >= deadline) {
+					return false;
+				}
+			}
+			settler.settle();
+			settler = null;
+			stage = pipeline.fire ? Stage.FIRE : Stage.DONE;
+			index = 0;
+		}
+		if(stage == Stage.FIRE) {
+			while(index < getBlockCount()) {
+				explosion.spawnFire(getBlock(index++));
+				if(index % BLOCKS_PER_CHECK == 0 && System.nanoTime() >= deadline) {
+					return false;
+				}
+			}
+			stage = Stage.DONE;
+		}
+		if(blocks != null) {
+			ExplosionBufferPool.release(blocks);
+			blocks = null;
+		}
+		if(result != null) {
+			result.release();
+			result = null;
+		}
+		return true;
+	}
+
+	private int getBlockCount() {
+		return result != null ? result.size() : blockCount;
+	}
+
+	/**
+	 * @return the block at the given index, either of the affected blocks of the explosion or of the blocks found by this explosion if they are not saved
+	 */
+	private BlockPos getBlock(int index) {
+		return result != null ? result.get(index, pos) : pos.set(blocks.get(index));
+	}
+
+	/**
+	 * Shoots the remaining explosion vectors or spreads the wavefront further until all blocks have been found or the deadline has passed.
+	 * @return whether or not all blocks have been found
+	 */
+	private boolean trace(long deadline) {
+		if(wavefront != null) {
+			return wavefront.run(explosion.createRayHit(pipeline, hits), deadline);
+		}
+		if(snapshot != null) {
+			while(index < plan.rayCount) {
+				int to = Math.min(index + RAYS_PER_PARALLEL_BATCH, plan.rayCount);
+				ExplosionRayTracer.traceParallel(explosion, plan, snapshot, stream, pipeline.randomVecLength, pipeline.resistanceImpact, pipeline.isStrongExplosion, index, to, hits);
+				index = to;
+				if(System.nanoTime() >= deadline) {
+					return index >= plan.rayCount;
+				}
+			}
+			return true;
+		}
+		if(tracer == null) {
+			tracer = new ExplosionRayTracer(explosion, plan, explosion.cursor, explosion.level, pipeline.resistanceImpact, pipeline.isStrongExplosion, explosion.createRayHit(pipeline, hits), stream, pipeline.randomVecLength);
+		}
+		while(index < plan.rayCount) {
+			int to = Math.min(index + (plan.adaptive ? 1 : RAYS_PER_CHECK), plan.rayCount);
+			tracer.traceRays(index, to);
+			index = to;
+			if(System.nanoTime() >= deadline) {
+				return index >= plan.rayCount;
+			}
+		}
+		return true;
+	}
+
+	private Stage getStageAfterDestroy() {
+		return pipeline.settleFluids ? Stage.SETTLE : pipeline.fire ? Stage.FIRE : Stage.DONE;
+	}
+
+	/**
+	 * @return whether or not all blocks of this explosion have been destroyed
+	 */
+	public boolean isFinished() {
+		return stage == Stage.DONE;
+	}
+
+	public ImprovedExplosion getExplosion() {
+		return explosion;
+	}
+
+	private static enum Stage {
+		TRACE,
+		DESTROY,
+		SETTLE,
+		FIRE,
+		DONE
+	}
+}
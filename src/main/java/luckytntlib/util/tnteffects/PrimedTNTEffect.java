@@ -1,10 +1,13 @@
 package luckytntlib.util.tnteffects;
 
+import java.util.List;
+
 import luckytntlib.entity.LExplosiveProjectile;
 import luckytntlib.entity.LTNTMinecart;
 import luckytntlib.entity.LivingPrimedLTNT;
 import luckytntlib.entity.PrimedLTNT;
 import luckytntlib.util.IExplosiveEntity;
+import luckytntlib.util.explosions.ExplosionScheduler;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.particles.ParticleTypes;
 import net.minecraft.server.level.ServerLevel;
@@ -46,11 +49,8 @@ public abstract class PrimedTNTEffect{
 		 */
 		if(entity instanceof PrimedLTNT || entity instanceof LivingPrimedLTNT || entity instanceof LTNTMinecart) {
 			if(entity.getTNTFuse() <= 0) {
-				if(entity.getLevel() instanceof ServerLevel) {
-					if(playsSound()) {
-						level.playSound((Entity)entity, new BlockPos(toBlockPos(entity.getPos())), SoundEvents.GENERIC_EXPLODE.get(), SoundSource.BLOCKS, 4f, (1f + (level.random.nextFloat() - level.random.nextFloat()) * 0.2f) * 0.7f);
-					}
-					serverExplosion(entity);
+				if(entity.getLevel() instanceof ServerLevel serverLevel) {
+					ExplosionScheduler.schedule(serverLevel, entity, this);
 				}
 				entity.destroy();
 			}
@@ -66,21 +66,15 @@ public abstract class PrimedTNTEffect{
 					ent.setTNTFuse(0);
 				}
 				if(ent.getTNTFuse() == 0) {
-					if(ent.level() instanceof ServerLevel) {
-						if(playsSound()) {
-							level.playSound((Entity)entity, new BlockPos(toBlockPos(entity.getPos())), SoundEvents.GENERIC_EXPLODE.get(), SoundSource.BLOCKS, 4f, (1f + (level.random.nextFloat() - level.random.nextFloat()) * 0.2f) * 0.7f);
-						}
-						serverExplosion(entity);
+					if(ent.level() instanceof ServerLevel serverLevel) {
+						ExplosionScheduler.schedule(serverLevel, entity, this);
 					}
 					ent.destroy();
 				}
 			}
 			else if(airFuse() && entity.getTNTFuse() == 0) {
-				if(ent.level() instanceof ServerLevel) {
-					if(playsSound()) {
-						level.playSound((Entity)entity, new BlockPos(toBlockPos(entity.getPos())), SoundEvents.GENERIC_EXPLODE.get(), SoundSource.BLOCKS, 4f, (1f + (level.random.nextFloat() - level.random.nextFloat()) * 0.2f) * 0.7f);
-					}
-					serverExplosion(entity);
+				if(ent.level() instanceof ServerLevel serverLevel) {
+					ExplosionScheduler.schedule(serverLevel, entity, this);
 				}
 				ent.destroy();
 			}
@@ -106,7 +100,44 @@ public abstract class PrimedTNTEffect{
 	}
 	
 	/**
-	 * This void is only executed on the logical server side by {@link PrimedTNTEffect#baseTick(IExplosiveEntity)} once the fuse hits 0.
+	 * This void is only executed on the logical server side once the fuse hits 0, either right away by {@link PrimedTNTEffect#baseTick(IExplosiveEntity)}
+	 * or, if enabled in the config, once the {@link ExplosionScheduler} of the level gets to it.
+	 * <p>
+	 * It plays the explosion sound and executes {@link PrimedTNTEffect#serverExplosion(IExplosiveEntity)}.
+	 * @param entity  the {@link IExplosiveEntity} this PrimedTNTEffect belongs to.
+	 */
+	public void detonate(IExplosiveEntity entity) {
+		playDetonationSound(entity);
+		serverExplosion(entity);
+	}
+	
+	/**
+	 * This void is only executed on the logical server side by the {@link ExplosionScheduler} if explosion coalescing is enabled in the config
+	 * and several explosives with this PrimedTNTEffect that {@link PrimedTNTEffect#canCoalesce()} detonate close to each other in the same tick.
+	 * <p>
+	 * Its default implementation detonates every explosive on its own.
+	 * Override this void together with {@link PrimedTNTEffect#canCoalesce()} to detonate them as one combined explosion instead.
+	 * @param entities  the {@link IExplosiveEntity}s this PrimedTNTEffect belongs to, at least two
+	 */
+	public void detonateCoalesced(List<IExplosiveEntity> entities) {
+		for(IExplosiveEntity entity : entities) {
+			detonate(entity);
+		}
+	}
+	
+	/**
+	 * Plays the explosion sound of an explosive if this PrimedTNTEffect {@link PrimedTNTEffect#playsSound()}.
+	 * @param entity  the {@link IExplosiveEntity} this PrimedTNTEffect belongs to.
+	 */
+	protected void playDetonationSound(IExplosiveEntity entity) {
+		Level level = entity.getLevel();
+		if(playsSound()) {
+			level.playSound((Entity)entity, new BlockPos(toBlockPos(entity.getPos())), SoundEvents.GENERIC_EXPLODE.get(), SoundSource.BLOCKS, 4f, (1f + (level.random.nextFloat() - level.random.nextFloat()) * 0.2f) * 0.7f);
+		}
+	}
+	
+	/**
+	 * This void is only executed on the logical server side by {@link PrimedTNTEffect#detonate(IExplosiveEntity)} once the fuse hits 0.
 	 * <p>
 	 * @implNote Due to synchronization inconsistencies a clientExplosion does not exist and must be implemented manually without the dependency of an entity.
 	 * @param entity  the {@link IExplosiveEntity} this PrimedTNTEffect belongs to.
@@ -144,6 +175,14 @@ public abstract class PrimedTNTEffect{
 		return true;
 	}
 	
+	/**
+	 * @implNote Only used by the {@link ExplosionScheduler} if explosion coalescing is enabled in the config!
+	 * @return Whether or not explosives with this PrimedTNTEffect that detonate close to each other in the same tick are passed to {@link PrimedTNTEffect#detonateCoalesced(List)} together
+	 */
+	public boolean canCoalesce() {
+		return false;
+	}
+	
 	/**
 	 * @implNote Only used by {@link LExplosiveProjectile}!
 	 * @return Whether or not this Explosive Projectile explodes upon hitting a block or an entity or not
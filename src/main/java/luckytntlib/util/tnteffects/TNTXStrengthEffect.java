@@ -1,13 +1,20 @@
 package luckytntlib.util.tnteffects;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
 
 import luckytntlib.block.LTNTBlock;
+import luckytntlib.config.LuckyTNTLibConfigValues;
 import luckytntlib.entity.PrimedLTNT;
 import luckytntlib.item.LDynamiteItem;
 import luckytntlib.util.IExplosiveEntity;
+import luckytntlib.util.explosions.CoalescedExplosion;
+import luckytntlib.util.explosions.ExplosionEngine;
+import luckytntlib.util.explosions.ExplosionPipeline;
+import luckytntlib.util.explosions.ExplosionPlan;
 import luckytntlib.util.explosions.ImprovedExplosion;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.item.Item;
@@ -37,8 +44,11 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 	private final float size;
 	private final boolean airFuse;
 	private final boolean explodesOnImpact;
+	private final ExplosionEngine engine;
+	private final boolean settleFluids;
+	@Nullable private ExplosionPlan plan;
 	
-	private TNTXStrengthEffect(@Nullable Supplier<RegistryObject<LTNTBlock>> TNT, @Nullable Supplier<RegistryObject<LDynamiteItem>> dynamite, int fuse, int strength, float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean fire, float knockbackStrength, boolean isStrongExplosion, float size, boolean airFuse, boolean explodesOnImpact) {
+	private TNTXStrengthEffect(@Nullable Supplier<RegistryObject<LTNTBlock>> TNT, @Nullable Supplier<RegistryObject<LDynamiteItem>> dynamite, int fuse, int strength, float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean fire, float knockbackStrength, boolean isStrongExplosion, float size, boolean airFuse, boolean explodesOnImpact, ExplosionEngine engine, boolean settleFluids) {
 		this.TNT = TNT;
 		this.dynamite = dynamite;
 		this.fuse = fuse;
@@ -53,13 +63,67 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		this.size = size;
 		this.airFuse = airFuse;
 		this.explodesOnImpact = explodesOnImpact;
+		this.engine = engine;
+		this.settleFluids = settleFluids;
 	}
 
 	@Override
 	public void serverExplosion(IExplosiveEntity entity) {
 		ImprovedExplosion explosion = new ImprovedExplosion(entity.getLevel(), (Entity) entity, entity.getPos().x, entity.getPos().y + 0.5f, entity.getPos().z, strength);
+		int threshold = LuckyTNTLibConfigValues.INCREMENTAL_EXPLOSION_THRESHOLD.get();
+		if(threshold > 0 && strength >= threshold) {
+			explosion.doIncrementalExplosion(getPipeline(), knockbackStrength, true);
+		}
+		else {
+			explosion.calculateBlockExplosion(getPipeline());
+			explosion.doEntityExplosion(knockbackStrength, true);
+			explosion.applyBlockExplosion(fire, settleFluids);
+		}
+	}
+	
+	@Override
+	public void detonateCoalesced(List<IExplosiveEntity> entities) {
+		int threshold = LuckyTNTLibConfigValues.INCREMENTAL_EXPLOSION_THRESHOLD.get();
+		if(threshold > 0 && strength >= threshold) {
+			super.detonateCoalesced(entities);
+			return;
+		}
+		playDetonationSound(entities.get(0));
+		List<ImprovedExplosion> explosions = new ArrayList<>();
+		for(IExplosiveEntity entity : entities) {
+			explosions.add(new ImprovedExplosion(entity.getLevel(), (Entity) entity, entity.getPos().x, entity.getPos().y + 0.5f, entity.getPos().z, strength));
+		}
+		CoalescedExplosion explosion = new CoalescedExplosion(explosions);
+		explosion.calculateBlockExplosion(getPipeline());
 		explosion.doEntityExplosion(knockbackStrength, true);
-		explosion.doBlockExplosion(xzStrength, yStrength, resistanceImpact, randomVecLength, fire, isStrongExplosion);
+		explosion.applyBlockExplosion(fire, settleFluids);
+	}
+	
+	@Override
+	public boolean canCoalesce() {
+		return true;
+	}
+	
+	/**
+	 * Gets the {@link ExplosionPlan} of this effect, which is compiled once and only compiled again if the config has changed since.
+	 * @return the ExplosionPlan
+	 */
+	public ExplosionPlan getPlan() {
+		ExplosionPlan plan = this.plan;
+		if(plan == null || !plan.matchesConfig()) {
+			this.plan = plan = ExplosionPlan.get(strength, xzStrength, yStrength);
+		}
+		return plan;
+	}
+	
+	/**
+	 * Gets the {@link ExplosionPipeline} this effect finds and destroys blocks with.
+	 * The {@link ExplosionPlan} is only needed if the {@link ExplosionEngine#RAYS} engine is used.
+	 * @return the ExplosionPipeline
+	 */
+	public ExplosionPipeline getPipeline() {
+		ExplosionPipeline.Builder builder = new ExplosionPipeline.Builder().engine(engine).resistanceImpact(resistanceImpact).randomVecLength(randomVecLength).strongExplosion(isStrongExplosion).fire(fire).settleFluids(settleFluids);
+		return engine == ExplosionEngine.RAYS ? builder.plan(getPlan()).build() : builder.strength(xzStrength, yStrength).build();
 	}
 	
 	@Override
@@ -105,11 +169,13 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		private float size = 1f;
 		private boolean airFuse = false;
 		private boolean explodesOnImpact = true;
+		private ExplosionEngine engine = ExplosionEngine.RAYS;
+		private boolean settleFluids = false;
 		
 		public Builder() {			
 		}
 		
-		private Builder(int fuse, int strength, float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean fire, float knockbackStrength, boolean isStrongExplosion, float size, boolean airFuse,  boolean explodesOnImpact) {
+		private Builder(int fuse, int strength, float xzStrength, float yStrength, float resistanceImpact, float randomVecLength, boolean fire, float knockbackStrength, boolean isStrongExplosion, float size, boolean airFuse,  boolean explodesOnImpact, ExplosionEngine engine, boolean settleFluids) {
 			this.fuse = fuse;
 			this.strength = strength;
 			this.xzStrength = xzStrength;
@@ -122,6 +188,8 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 			this.size = size;
 			this.airFuse = airFuse;
 			this.explodesOnImpact = explodesOnImpact;
+			this.engine = engine;
+			this.settleFluids = settleFluids;
 		}
 
 		/**
@@ -129,7 +197,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param fuse
 		 */
 		public Builder fuse(int fuse) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -137,7 +205,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param strength
 		 */
 		public Builder strength(int strength) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -145,7 +213,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param xzStrength
 		 */
 		public Builder xzStrength(float xzStrength) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -153,7 +221,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param yStrength
 		 */
 		public Builder yStrength(float yStrength) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -161,7 +229,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param resistanceImpact
 		 */
 		public Builder resistanceImpact(float resistanceImpact) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -170,7 +238,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param randomVecLength
 		 */
 		public Builder randomVecLength(float randomVecLength) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 
 		/**
@@ -178,7 +246,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param fire
 		 */
 		public Builder fire(boolean fire) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 
 		/**
@@ -186,7 +254,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param knockbackStrength
 		 */
 		public Builder knockbackStrength(float knockbackStrength) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -194,7 +262,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param isStrongExplosion
 		 */
 		public Builder isStrongExplosion(boolean isStrongExplosion) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 
 		/**
@@ -202,7 +270,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param size
 		 */
 		public Builder size(float size) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -211,7 +279,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param airFuse
 		 */
 		public Builder airFuse(boolean airFuse) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -220,7 +288,24 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @param explodesOnImpact
 		 */
 		public Builder explodesOnImpact(boolean explodesOnImpact) {
-			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
+		}
+		
+		/**
+		 * This value decides how the blocks destroyed by the explosion are found.
+		 * {@link ExplosionEngine#WAVEFRONT} only needs time proportional to the volume of the crater and {@link ExplosionEngine#HIERARCHICAL} mostly only to its surface, which suits very large explosions
+		 * @param engine
+		 */
+		public Builder engine(ExplosionEngine engine) {
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
+		}
+		
+		/**
+		 * This boolean decides whether or not fluids around the crater, like an ocean next to a strong explosion, should fill it at once instead of flowing in over hundreds of ticks
+		 * @param settleFluids
+		 */
+		public Builder settleFluids(boolean settleFluids) {
+			return new Builder(fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -229,7 +314,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @return new TNTXStrengthEffect
 		 */
 		public TNTXStrengthEffect build() {
-			return new TNTXStrengthEffect(null, null, fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new TNTXStrengthEffect(null, null, fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -238,7 +323,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @return new TNTXStrengthEffect
 		 */
 		public TNTXStrengthEffect buildTNT(Supplier<RegistryObject<LTNTBlock>> TNT) {
-			return new TNTXStrengthEffect(TNT, null, fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new TNTXStrengthEffect(TNT, null, fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 		
 		/**
@@ -247,7 +332,7 @@ public class TNTXStrengthEffect extends PrimedTNTEffect{
 		 * @return new TNTXStrengthEffect
 		 */
 		public TNTXStrengthEffect buildDynamite(Supplier<RegistryObject<LDynamiteItem>> dynamite) {
-			return new TNTXStrengthEffect(null, dynamite, fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact);
+			return new TNTXStrengthEffect(null, dynamite, fuse, strength, xzStrength, yStrength, resistanceImpact, randomVecLength, fire, knockbackStrength, isStrongExplosion, size, airFuse, explodesOnImpact, engine, settleFluids);
 		}
 	}
 }